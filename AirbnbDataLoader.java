@@ -7,6 +7,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import com.opencsv.CSVReader;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class AirbnbDataLoader {
  
@@ -14,11 +17,110 @@ public class AirbnbDataLoader {
      * Return an ArrayList containing the rows in the AirBnB London data set csv file.
      */
     public ArrayList<AirbnbListing> load() {
+        return new ArrayList<AirbnbListing>(loadTable().asList());
+    }
+
+    /**
+     * Return a {@link ListingsTable} containing the rows in the AirBnB London data set csv file.
+     * This stores the listings column by column, which uses far less memory than one object per row.
+     * The file is parsed on all cores using a {@link ListingsCsvParser}.
+     */
+    public ListingsTable loadTable() {
+        return loadTable((ListingsCsvParser.ProgressListener) null);
+    }
+
+    /**
+     * Return a {@link ListingsTable} containing the rows in the AirBnB London data set csv file,
+     * telling a listener how the loading is going.
+     * 
+     * @param listener Told about the progress, and given partial results while the file is parsed. Can be null.
+     */
+    public ListingsTable loadTable(ListingsCsvParser.ProgressListener listener) {
+        try {
+            return loadTable(getDataFile(), listener);
+        } catch (URISyntaxException e) {
+            System.out.println("Failure! Something went wrong");
+            e.printStackTrace();
+            return ListingsTable.EMPTY;
+        }
+    }
+
+    /**
+     * Return a {@link ListingsTable} containing the rows in a listings csv file.
+     * If there is an up to date {@link ListingsSnapshot} of the file, that is used instead of parsing it.
+     * Otherwise the file is parsed, and a snapshot is written so it is much faster next time.
+     * 
+     * @param csvFile The csv file to load. It must have the same columns as the AirBnB London data set.
+     */
+    public ListingsTable loadTable(Path csvFile) {
+        return loadTable(csvFile, null);
+    }
+
+    /**
+     * Return a {@link ListingsTable} containing the rows in a listings csv file,
+     * telling a listener how the loading is going. See {@link #loadTable(Path)}.
+     * 
+     * @param csvFile The csv file to load. It must have the same columns as the AirBnB London data set.
+     * @param listener Told about the progress, and given partial results while the file is parsed. Can be null.
+     */
+    public ListingsTable loadTable(Path csvFile, ListingsCsvParser.ProgressListener listener) {
+        System.out.print("Begin loading Airbnb london dataset...");
+        ListingsTable listings = ListingsSnapshot.read(csvFile);
+        if (listings != null) {
+            System.out.println("Success! Number of records loaded from snapshot: " + listings.size());
+            return listings;
+        }
+        
+        listings = ListingsTable.EMPTY;
+        long csvSize;
+        long csvModified;
+        try{
+            // Remember what the file was like before parsing it, so if it changes while it's parsed the snapshot won't match it...
+            csvSize = Files.size(csvFile);
+            csvModified = Files.getLastModifiedTime(csvFile).toMillis();
+            listings = new ListingsCsvParser().parse(csvFile, listener);
+        } catch(IOException e){
+            System.out.println("Failure! Something went wrong");
+            e.printStackTrace();
+            return listings;
+        }
+        System.out.println("Success! Number of loaded records: " + listings.size());
+        
+        try {
+            ListingsSnapshot.write(listings, csvFile, csvSize, csvModified);
+        } catch (IOException e) {
+            // Not being able to write the snapshot doesn't matter much, it'll just be slower next time.
+            System.out.println("Couldn't write a snapshot of the dataset: " + e);
+        }
+        return listings;
+    }
+
+    /**
+     * Return an ArrayList containing the rows in the AirBnB London data set csv file, read one line at a time
+     * with opencsv's CSVReader. This is how the data set used to be loaded, and is kept so the results and 
+     * speed of {@link #loadTable()} can be compared against it.
+     */
+    public ArrayList<AirbnbListing> loadWithCsvReader() {
+        try {
+            return loadWithCsvReader(getDataFile());
+        } catch (URISyntaxException e) {
+            System.out.println("Failure! Something went wrong");
+            e.printStackTrace();
+            return new ArrayList<AirbnbListing>();
+        }
+    }
+
+    /**
+     * Return an ArrayList containing the rows in a listings csv file, read one line at a time
+     * with opencsv's CSVReader.
+     * 
+     * @param csvFile The csv file to load. It must have the same columns as the AirBnB London data set.
+     */
+    public ArrayList<AirbnbListing> loadWithCsvReader(Path csvFile) {
         System.out.print("Begin loading Airbnb london dataset...");
         ArrayList<AirbnbListing> listings = new ArrayList<AirbnbListing>();
         try{
-            URL url = getClass().getResource("airbnb-london.csv");
-            CSVReader reader = new CSVReader(new FileReader(new File(url.toURI()).getAbsolutePath()));
+            CSVReader reader = new CSVReader(new FileReader(csvFile.toFile().getAbsolutePath()));
             String [] line;
             //skip the first row (column headers)
             reader.readNext();
@@ -46,7 +148,7 @@ public class AirbnbDataLoader {
                     );
                 listings.add(listing);
             }
-        } catch(IOException | URISyntaxException e){
+        } catch(IOException e){
             System.out.println("Failure! Something went wrong");
             e.printStackTrace();
         }
@@ -54,6 +156,14 @@ public class AirbnbDataLoader {
         return listings;
     }
 
+    /**
+     * Get the location of the AirBnB London data set csv file.
+     */
+    private Path getDataFile() throws URISyntaxException {
+        URL url = getClass().getResource("airbnb-london.csv");
+        return Paths.get(url.toURI());
+    }
+
     /**
      *
      * @param doubleString the string to be converted to Double type
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.opencsv.CSVReader;
+
+/**
+ * The boroughs (or any other regions) of a city, loaded from a csv file rather than written into the code,
+ * so the app can be pointed at a different city by changing the data.
+ *
+ * Each borough has an integer id (its line in the file, starting at 0), a name which matches the neighbourhood
+ * column of the listings, a short code shown on the map, and a place on the hexagon map. The file has the columns
+ * code, name, column and row. Hexagons in the same row are two columns apart, and every other row is shifted
+ * along by one column, so the hexagons fit together.
+ *
+ * A {@link ListingsTable} gives its boroughs the same codes as the ids of its catalog, so the ids can be used
+ * straight away to look at the borough column and the per-borough counts.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-27
+ */
+public final class BoroughCatalog {
+    // A catalog with no boroughs in it.
+    public static final BoroughCatalog EMPTY = new BoroughCatalog(new String[0], new String[0], new int[0], new int[0]);
+    // The file the default catalog is loaded from.
+    private static final String DEFAULT_FILE = "boroughs.csv";
+
+    // Loaded the first time it is needed...
+    private static volatile BoroughCatalog defaultCatalog;
+
+    private final String[] codes;
+    private final String[] names;
+    private final int[] columns;
+    private final int[] rows;
+    private final Map<String, Integer> idsByName = new HashMap<>();
+
+    private BoroughCatalog(String[] codes, String[] names, int[] columns, int[] rows) {
+        this.codes = codes;
+        this.names = names;
+        this.columns = columns;
+        this.rows = rows;
+        for (int id = 0; id < names.length; id++) idsByName.put(names[id], id);
+    }
+
+    /**
+     * Get the catalog of the boroughs of London, which is used for the listings unless another one is given.
+     * If the file can't be read, the catalog is empty (and every borough gets its code when it is first seen).
+     *
+     * @return The default catalog.
+     */
+    public static BoroughCatalog getDefault() {
+        BoroughCatalog catalog = defaultCatalog;
+        if (catalog == null) {
+            synchronized (BoroughCatalog.class) {
+                catalog = defaultCatalog;
+                if (catalog == null) {
+                    try (InputStream input = BoroughCatalog.class.getResourceAsStream(DEFAULT_FILE)) {
+                        catalog = input == null ? EMPTY : read(input);
+                    } catch (IOException | RuntimeException e) {
+                        System.out.println("Failure! Could not load the boroughs");
+                        e.printStackTrace();
+                        catalog = EMPTY;
+                    }
+                    defaultCatalog = catalog;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Read a catalog from a csv file with the columns code, name, column and row (and a header line).
+     *
+     * @param input The contents of the file. This isn't closed.
+     * @return The catalog.
+     * @throws IOException If the file can't be read.
+     */
+    public static BoroughCatalog read(InputStream input) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        CSVReader reader = new CSVReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String[] line;
+        //skip the first row (column headers)
+        reader.readNext();
+        while ((line = reader.readNext()) != null) {
+            // Skip blank lines at the end of the file...
+            if (line.length == 1 && line[0].isBlank()) continue;
+            if (line.length < 4) throw new IOException("Expected code, name, column and row but got " + Arrays.toString(line));
+            lines.add(line);
+        }
+
+        String[] codes = new String[lines.size()];
+        String[] names = new String[lines.size()];
+        int[] columns = new int[lines.size()];
+        int[] rows = new int[lines.size()];
+        for (int id = 0; id < lines.size(); id++) {
+            codes[id] = lines.get(id)[0].trim();
+            names[id] = lines.get(id)[1].trim();
+            try {
+                columns[id] = Integer.parseInt(lines.get(id)[2].trim());
+                rows[id] = Integer.parseInt(lines.get(id)[3].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("The place of " + names[id] + " on the map isn't a number", e);
+            }
+        }
+        return new BoroughCatalog(codes, names, columns, rows);
+    }
+
+    /**
+     * Get the number of boroughs. The ids go from 0 to size - 1.
+     *
+     * @return The number of boroughs.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Get the id of a borough from its name.
+     *
+     * @param name The name of the borough, as it is in the listings.
+     * @return The id of the borough, or -1 if it isn't in the catalog.
+     */
+    public int getId(String name) {
+        Integer id = idsByName.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Get the name of a borough, as it is in the listings.
+     *
+     * @param id The id of the borough.
+     * @return The name of the borough.
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Get the short code of a borough, shown on its hexagon.
+     *
+     * @param id The id of the borough.
+     * @return The code of the borough.
+     */
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+    /**
+     * Get the column of the hexagon map a borough is in.
+     *
+     * @param id The id of the borough.
+     * @return The column, from the left.
+     */
+    public int getColumn(int id) {
+        return columns[id];
+    }
+
+    /**
+     * Get the row of the hexagon map a borough is in.
+     *
+     * @param id The id of the borough.
+     * @return The row, from the top.
+     */
+    public int getRow(int id) {
+        return rows[id];
+    }
+
+    /**
+     * Get the names of all the boroughs, in the order of their ids.
+     *
+     * @return A new array of the names.
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.BitSet;
+
+/**
+ * An inverted index of the boroughs and room types in a {@link ListingsTable}.
+ * For every borough and every room type there is a {@link BitSet} with a bit set for each row that has it.
+ * Filters can then be put together by combining the bitsets (and, or...) instead of checking every row.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-25
+ */
+public final class CategoryIndex {
+    private final int size;
+    // The rows for each borough code and each room type code.
+    private final BitSet[] boroughs;
+    private final BitSet[] roomTypes;
+    private final int[] boroughCounts;
+    private final int[] roomTypeCounts;
+
+    /**
+     * Build the index for a table. This goes through the rows once.
+     *
+     * @param table The table to build the index for.
+     */
+    CategoryIndex(ListingsTable table) {
+        size = table.size();
+        boroughs = newBitSets(table.boroughNames().length, size);
+        roomTypes = newBitSets(table.roomTypeNames().length, size);
+        int[] boroughColumn = table.boroughs();
+        int[] roomTypeColumn = table.roomTypes();
+        for (int row = 0; row < size; row++) {
+            boroughs[boroughColumn[row]].set(row);
+            roomTypes[roomTypeColumn[row]].set(row);
+        }
+        boroughCounts = new int[boroughs.length];
+        for (int borough = 0; borough < boroughs.length; borough++) boroughCounts[borough] = boroughs[borough].cardinality();
+        roomTypeCounts = new int[roomTypes.length];
+        for (int roomType = 0; roomType < roomTypes.length; roomType++) roomTypeCounts[roomType] = roomTypes[roomType].cardinality();
+    }
+
+    /**
+     * Get the rows in any of the boroughs given.
+     *
+     * @param boroughCodes The codes of the boroughs.
+     * @return A new bitset of the rows in the boroughs, which can be changed freely.
+     */
+    public BitSet rowsInBoroughs(int... boroughCodes) {
+        return union(boroughs, boroughCodes);
+    }
+
+    /**
+     * Get the rows with any of the room types given.
+     *
+     * @param roomTypeCodes The codes of the room types.
+     * @return A new bitset of the rows with the room types, which can be changed freely.
+     */
+    public BitSet rowsWithRoomTypes(int... roomTypeCodes) {
+        return union(roomTypes, roomTypeCodes);
+    }
+
+    /**
+     * Get the number of rows in a borough.
+     *
+     * @param boroughCode The code of the borough.
+     * @return The number of rows in the borough.
+     */
+    public int countInBorough(int boroughCode) {
+        return boroughCounts[boroughCode];
+    }
+
+    /**
+     * Get the number of rows with a room type.
+     *
+     * @param roomTypeCode The code of the room type.
+     * @return The number of rows with the room type.
+     */
+    public int countWithRoomType(int roomTypeCode) {
+        return roomTypeCounts[roomTypeCode];
+    }
+
+    /**
+     * Get the rows in a borough without copying them. The bitset is shared, so it must not be changed!
+     */
+    BitSet boroughRows(int boroughCode) {
+        return boroughs[boroughCode];
+    }
+
+    /**
+     * Turn a bitset of rows into an array of ordinals.
+     *
+     * @param rows The rows.
+     * @return The ordinals of the rows, in ascending order.
+     */
+    public static int[] toRows(BitSet rows) {
+        int[] ordinals = new int[rows.cardinality()];
+        int count = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) ordinals[count++] = row;
+        return ordinals;
+    }
+
+    private BitSet union(BitSet[] bitSets, int[] codes) {
+        BitSet result = new BitSet(size);
+        for (int code : codes) result.or(bitSets[code]);
+        return result;
+    }
+
+    private static BitSet[] newBitSets(int count, int size) {
+        BitSet[] bitSets = new BitSet[count];
+        for (int i = 0; i < count; i++) bitSets[i] = new BitSet(size);
+        return bitSets;
+    }
+}
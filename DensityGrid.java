@@ -0,0 +1,133 @@
+/**
+ * The number of listings in each pixel of a picture of the map, for drawing a heatmap.
+ * The picture covers every listing in the table (not just the ones counted), keeping the shape of the map,
+ * so heatmaps of different filters line up with each other.
+ *
+ * Counting goes through the rows once, so it should be done in the background. Drawing the heatmap only has to
+ * go through the pixels, so it takes the same time however many listings were counted.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-27
+ */
+public final class DensityGrid {
+    private final int width;
+    private final int height;
+    // The count of each pixel, a row of pixels at a time, starting at the top (north).
+    private final int[] counts;
+    private final int maximum;
+
+    private DensityGrid(int width, int height, int[] counts) {
+        this.width = width;
+        this.height = height;
+        this.counts = counts;
+        int maximum = 0;
+        for (int count : counts) maximum = Math.max(maximum, count);
+        this.maximum = maximum;
+    }
+
+    /**
+     * Count some of the listings of a table in each pixel of a picture of the map.
+     * Listings without a location aren't counted.
+     *
+     * @param table The table holding the listings.
+     * @param rows The ordinals of the rows to count.
+     * @param width The width of the picture, in pixels.
+     * @param height The height of the picture, in pixels.
+     * @return The counts.
+     */
+    public static DensityGrid of(ListingsTable table, int[] rows, int width, int height) {
+        SpatialIndex index = table.spatialIndex();
+        double[] latitudes = table.latitudes();
+        double[] longitudes = table.longitudes();
+        // Fit the whole map into the picture, with the same number of metres per pixel both ways, in the middle...
+        double metresWide = (index.getEast() - index.getWest()) * index.getMetresPerDegreeLongitude();
+        double metresHigh = (index.getNorth() - index.getSouth()) * SpatialIndex.METRES_PER_DEGREE;
+        double pixelsPerMetre = Math.min(width / Math.max(metresWide, 1), height / Math.max(metresHigh, 1));
+        double pixelsPerLongitude = pixelsPerMetre * index.getMetresPerDegreeLongitude();
+        double pixelsPerLatitude = pixelsPerMetre * SpatialIndex.METRES_PER_DEGREE;
+        double left = (width - metresWide * pixelsPerMetre) / 2;
+        double top = (height - metresHigh * pixelsPerMetre) / 2;
+
+        int[] counts = new int[width * height];
+        for (int row : rows) {
+            double latitude = latitudes[row], longitude = longitudes[row];
+            if (latitude == -1 || longitude == -1) continue;
+            int x = (int) (left + (longitude - index.getWest()) * pixelsPerLongitude);
+            int y = (int) (top + (index.getNorth() - latitude) * pixelsPerLatitude);
+            // The listings on the east and south edges are exactly on the edge of the picture...
+            x = Math.min(Math.max(x, 0), width - 1);
+            y = Math.min(Math.max(y, 0), height - 1);
+            counts[y * width + x]++;
+        }
+        return new DensityGrid(width, height, counts);
+    }
+
+    /**
+     * Spread the counts out, so each listing shows up as a blob rather than a single pixel.
+     * Each pixel of the new grid is the total of the pixels in a square around it in this one.
+     * This is done with a table of running totals, so it takes the same time whatever the radius is.
+     *
+     * @param radius The number of pixels to spread each count in every direction.
+     * @return A new grid of the spread out counts.
+     */
+    public DensityGrid blurred(int radius) {
+        // totals[(y + 1) * (width + 1) + x + 1] is the total of every pixel above and to the left of (x, y), including it.
+        long[] totals = new long[(width + 1) * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            long rowTotal = 0;
+            for (int x = 0; x < width; x++) {
+                rowTotal += counts[y * width + x];
+                totals[(y + 1) * (width + 1) + x + 1] = totals[y * (width + 1) + x + 1] + rowTotal;
+            }
+        }
+        int[] blurred = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int top = Math.max(y - radius, 0), bottom = Math.min(y + radius + 1, height);
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(x - radius, 0), right = Math.min(x + radius + 1, width);
+                long total = totals[bottom * (width + 1) + right] - totals[top * (width + 1) + right]
+                        - totals[bottom * (width + 1) + left] + totals[top * (width + 1) + left];
+                blurred[y * width + x] = (int) Math.min(total, Integer.MAX_VALUE);
+            }
+        }
+        return new DensityGrid(width, height, blurred);
+    }
+
+    /**
+     * Get the width of the picture.
+     *
+     * @return The width, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the picture.
+     *
+     * @return The height, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the number of listings in a pixel.
+     *
+     * @param x The column of the pixel, from the left (west).
+     * @param y The row of the pixel, from the top (north).
+     * @return The number of listings in the pixel.
+     */
+    public int getCount(int x, int y) {
+        return counts[y * width + x];
+    }
+
+    /**
+     * Get the most listings in any pixel.
+     *
+     * @return The highest count.
+     */
+    public int getMaximum() {
+        return maximum;
+    }
+}
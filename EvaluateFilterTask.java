@@ -0,0 +1,36 @@
+import javafx.concurrent.Task;
+
+/**
+ * A background task which works out the results of a filter (the statistics, and the count of properties
+ * in each borough) so the panels can show them without doing any filtering on the JavaFX thread.
+ * The results are kept in the filter's cache, which is shared with the filters made from it, so the panels find them there.
+ *
+ * If the filter is changed again before this finishes, the task should be cancelled. It stops between each
+ * result it works out, and a cancelled task never succeeds, so an out of date filter is never shown.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-27
+ */
+public class EvaluateFilterTask extends Task<ListingsFilter> {
+    private final ListingsFilter filter;
+
+    /**
+     * Create a task to work out the results of a filter.
+     *
+     * @param filter The filter to work out the results of.
+     */
+    public EvaluateFilterTask(ListingsFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    protected ListingsFilter call() {
+        updateMessage("Filtering listings...");
+        filter.getStatistics();
+        if (isCancelled()) return null;
+        filter.getCountPerBorough();
+        if (isCancelled()) return null;
+        updateMessage(filter.getDescription());
+        return filter;
+    }
+}
@@ -0,0 +1,138 @@
+import javafx.application.Platform;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The filter being shown by the GUI, which panels can subscribe to so they are told whenever it changes.
+ * This replaces the old shared static filter, which panels had to copy when they were loaded and were never told about changes to.
+ *
+ * Each filter published gets a new version number. Filters never change, so each one published is a snapshot
+ * which can be handed to any thread.
+ *
+ * Subscribers are told about changes on the JavaFX thread. If several filters are published before a subscriber
+ * has been told, it is only told once, about the latest one, so a burst of changes is only shown once.
+ * Anything that shouldn't update (like a popped out window) just doesn't subscribe.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-24
+ */
+public class FilterState {
+    private final Executor deliverer;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private ListingsFilter filter;
+    private long version = 0;
+
+    /**
+     * Create the state, telling subscribers about changes on the JavaFX thread.
+     *
+     * @param filter The filter to start with.
+     */
+    public FilterState(ListingsFilter filter) {
+        this(filter, Platform::runLater);
+    }
+
+    /**
+     * Create the state, telling subscribers about changes using an executor.
+     *
+     * @param filter The filter to start with.
+     * @param deliverer Runs the code which tells a subscriber about a change. Subscribers are only told on this.
+     */
+    public FilterState(ListingsFilter filter, Executor deliverer) {
+        this.filter = filter;
+        this.deliverer = deliverer;
+    }
+
+    /**
+     * Get the latest filter published.
+     *
+     * @return The latest filter.
+     */
+    public synchronized ListingsFilter get() {
+        return filter;
+    }
+
+    /**
+     * Get the version of the latest filter published. This goes up by one every time a filter is published.
+     *
+     * @return The version of the latest filter.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Publish a new filter, and tell the subscribers about it (later, using the deliverer).
+     * This can be called on any thread.
+     *
+     * @param filter The new filter.
+     */
+    public void publish(ListingsFilter filter) {
+        synchronized (this) {
+            this.filter = filter;
+            version++;
+        }
+        for (Subscription subscription : subscriptions) subscription.schedule();
+    }
+
+    /**
+     * Subscribe to changes of the filter. The subscriber is told about the current filter straight away
+     * (on the calling thread, which should be the one the deliverer uses), then about every change after that.
+     *
+     * @param subscriber Is given each new filter.
+     * @return The subscription, which can be cancelled to stop being told about changes.
+     */
+    public Subscription subscribe(Consumer<ListingsFilter> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.deliver();
+        return subscription;
+    }
+
+    /**
+     * A subscription to changes of the filter.
+     */
+    public final class Subscription {
+        private final Consumer<ListingsFilter> subscriber;
+        // Whether telling the subscriber has been given to the deliverer, but hasn't happened yet...
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean cancelled = false;
+        // Only used by the deliverer's thread.
+        private long deliveredVersion = -1;
+
+        private Subscription(Consumer<ListingsFilter> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Stop telling the subscriber about changes. It may still be told about one that was already on its way.
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            // If it is already going to be told, it will be told about the latest filter then, so there's nothing to do...
+            if (!cancelled && scheduled.compareAndSet(false, true)) deliverer.execute(this::deliver);
+        }
+
+        private void deliver() {
+            // Anything published after this will schedule it again.
+            scheduled.set(false);
+            if (cancelled) return;
+            ListingsFilter latest;
+            long latestVersion;
+            synchronized (FilterState.this) {
+                latest = filter;
+                latestVersion = version;
+            }
+            if (latestVersion == deliveredVersion) return;
+            deliveredVersion = latestVersion;
+            subscriber.accept(latest);
+        }
+    }
+}
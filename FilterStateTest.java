@@ -0,0 +1,103 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * The test class FilterStateTest.
+ * The subscribers are told about changes using a queue instead of the JavaFX thread, which is only run when
+ * the test says, so several filters can be published before any subscriber is told. Each subscriber should then
+ * be told once, about the latest filter, and a cancelled subscription shouldn't be told anything.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class FilterStateTest
+{
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private final ListingsFilter first = new ListingsFilter(ListingsTable.EMPTY);
+    private final FilterState state = new FilterState(first, queue::add);
+
+    /**
+     * Test that a subscriber is told about the current filter straight away.
+     */
+    @Test
+    public void toldCurrentFilterWhenSubscribing() {
+        List<ListingsFilter> told = new ArrayList<>();
+        state.subscribe(told::add);
+        assertEquals("The subscriber should be told about the current filter straight away", List.of(first), told);
+        assertTrue("Nothing should be waiting to be delivered", queue.isEmpty());
+    }
+
+    /**
+     * Test that a burst of filters published before the subscribers are told is only delivered once to each
+     * subscriber, with the latest filter.
+     */
+    @Test
+    public void burstDeliveredOncePerSubscriber() {
+        List<ListingsFilter> toldA = new ArrayList<>();
+        List<ListingsFilter> toldB = new ArrayList<>();
+        state.subscribe(toldA::add);
+        state.subscribe(toldB::add);
+
+        ListingsFilter latest = first;
+        for (int price = 100; price <= 500; price += 100) {
+            latest = first.withPrice(0, price);
+            state.publish(latest);
+        }
+        assertEquals("Each subscriber should only be waiting to be told once", 2, queue.size());
+        assertEquals("Every filter published should get a new version", 5, state.getVersion());
+        drain();
+
+        assertEquals("The first subscriber should be told once, about the latest filter", List.of(first, latest), toldA);
+        assertEquals("The second subscriber should be told once, about the latest filter", List.of(first, latest), toldB);
+    }
+
+    /**
+     * Test that filters published after a subscriber has been told are delivered again.
+     */
+    @Test
+    public void publishedAgainAfterDelivery() {
+        List<ListingsFilter> told = new ArrayList<>();
+        state.subscribe(told::add);
+        ListingsFilter second = first.withPrice(0, 100);
+        state.publish(second);
+        drain();
+        ListingsFilter third = first.withPrice(0, 200);
+        state.publish(third);
+        drain();
+        assertEquals(List.of(first, second, third), told);
+        assertSame(third, state.get());
+    }
+
+    /**
+     * Test that a cancelled subscription isn't told about anything, even if it was already waiting to be told.
+     */
+    @Test
+    public void cancelledSubscriptionNotTold() {
+        List<ListingsFilter> cancelledEarly = new ArrayList<>();
+        List<ListingsFilter> cancelledWhileWaiting = new ArrayList<>();
+        state.subscribe(cancelledEarly::add).cancel();
+        FilterState.Subscription waiting = state.subscribe(cancelledWhileWaiting::add);
+
+        state.publish(first.withPrice(0, 100));
+        waiting.cancel();
+        state.publish(first.withPrice(0, 200));
+        drain();
+
+        assertEquals("A cancelled subscription should only have been told about the filter when it subscribed",
+                List.of(first), cancelledEarly);
+        assertEquals("A subscription cancelled while waiting shouldn't be told", List.of(first), cancelledWhileWaiting);
+    }
+
+    /**
+     * Run everything waiting to be delivered, like the JavaFX thread would.
+     */
+    private void drain() {
+        Runnable next;
+        while ((next = queue.poll()) != null) next.run();
+    }
+}
@@ -16,7 +16,7 @@ import javafx.scene.Parent;
  * Main JavaFX GUI class
  *
  * @author Fatlir Topalli (K1921543)
- * @version 2020.03.15
+ * @version 2020.04.23
  */
 public class GUI extends Application
 {
@@ -30,9 +30,7 @@ public class GUI extends Application
     @Override
     public void start(Stage stage) throws Exception
     {
-        // Load the listings ready for filtering. 
-        SharedData.listingsFilter = new ListingsFilter();
-        
+        // The GUIController loads the listings in the background, and shows them as they arrive.
         URL url = getClass().getResource("GUI.fxml");
         Parent root = FXMLLoader.load(url);
         Scene scene = new Scene (root);
@@ -9,17 +9,21 @@ import javafx.scene.Scene;
 import javafx.scene.layout.*;
 import javafx.scene.control.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import javafx.scene.Parent;
 import javafx.stage.Stage;
 
 import java.io.*;
 import java.text.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * JavaFX GUI Controller class.
  *
  * @author Fatlir Topalli (K1921543), Daniel VC (K19012373) and Skye Macdonald (k19015078)
- * @version 2020.03.27
+ * @version 2020.04.28
  */
 public class GUIController implements Initializable
 {
@@ -30,8 +34,25 @@ public class GUIController implements Initializable
     @FXML private Label invalidRangeLabel;
     @FXML private BorderPane navigationButtons;
     @FXML private Button popOut;
+    @FXML private HBox loadingIndicator;
+    @FXML private ProgressBar loadingProgress;
+    @FXML private Label loadingLabel;
     private ArrayList<String> panelList;
     private String currentPanel;
+    // The panels which have been loaded, by name, so they are only loaded once...
+    private final Map<String, LoadedPanel> loadedPanels = new HashMap<>();
+    
+    // Filters are worked out one at a time in the background, so the window doesn't freeze while they are.
+    private static final ExecutorService FILTER_EXECUTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Listings filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The filter being shown, which the panels subscribe to. It starts off with no listings, so the window can be shown straight away.
+    private final FilterState filterState = new FilterState(new ListingsFilter(ListingsTable.EMPTY));
+    // The filter the user asked for most recently. The one being shown is older until this has been worked out...
+    private ListingsFilter latestFilter = filterState.get();
+    private EvaluateFilterTask filterTask;
     
     /**
      * Initialize JavaFX controller
@@ -61,6 +82,69 @@ public class GUIController implements Initializable
         panelList.add("chartPanel");
 
         loadPanel(panelList.get(0));
+        
+        loadListings();
+    }
+    
+    /**
+     * Load the listings in the background, showing how far it has got.
+     * Whenever more listings have been loaded, the current panel is reloaded to show them.
+     */
+    private void loadListings()
+    {
+        LoadListingsTask task = new LoadListingsTask();
+        loadingProgress.progressProperty().bind(task.progressProperty());
+        loadingLabel.textProperty().bind(task.messageProperty());
+        // The value of the task is the listings loaded so far, and then all of them once it has finished.
+        task.valueProperty().addListener((observable, oldListings, newListings) -> {
+            if (newListings != null) showListings(newListings);
+        });
+        task.setOnSucceeded(event -> loadingIndicator.setVisible(false));
+        task.setOnFailed(event -> {
+            loadingLabel.textProperty().unbind();
+            loadingLabel.setText("Failed to load the listings!");
+            task.getException().printStackTrace();
+        });
+        
+        Thread thread = new Thread(task, "Listings loader");
+        // Don't stop the program from closing if it's still loading...
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Use a different set of listings, keeping the current filter settings, and reload the panel to show them.
+     * 
+     * @param listings The listings to show.
+     */
+    private void showListings(ListingsTable listings)
+    {
+        applyFilter(latestFilter.withListings(listings));
+    }
+    
+    /**
+     * Work out the results of a filter in the background, then publish it so the panels show it.
+     * Anything still being worked out for an older filter is cancelled, as it won't be shown.
+     * Until the new filter is ready, the panels keep showing the old one.
+     * 
+     * @param filter The filter to show.
+     */
+    private void applyFilter(ListingsFilter filter)
+    {
+        latestFilter = filter;
+        if (filterTask != null) filterTask.cancel();
+        
+        EvaluateFilterTask task = new EvaluateFilterTask(filter);
+        filterTask = task;
+        // These are run on the JavaFX thread, so nothing else is touching the panels...
+        task.setOnSucceeded(event -> {
+            // Just in case this finished before it could be cancelled...
+            if (filterTask != task) return;
+            filterTask = null;
+            filterState.publish(task.getValue());
+        });
+        task.setOnFailed(event -> task.getException().printStackTrace());
+        FILTER_EXECUTOR.execute(task);
     }
     
     /**
@@ -97,20 +181,31 @@ public class GUIController implements Initializable
     
     /**
      * Used to load a panel on to the stage
+     * Each panel is only loaded from its FXML file the first time. After that the same panel is shown again.
+     * Only the panel on screen is subscribed to the filter, so hidden panels aren't worked out again every time
+     * it changes. A panel catches up when it is shown again, if the filter has changed since it was last shown.
      * @param panel The name of the FXML panel file
      */
     private void loadPanel(String panel)
     {
-        Parent loadedPanel  = null;
-        try
+        LoadedPanel shownPanel = loadedPanels.get(currentPanel);
+        if(shownPanel != null && !panel.equals(currentPanel)) shownPanel.unsubscribe();
+        LoadedPanel loadedPanel = loadedPanels.get(panel);
+        if(loadedPanel == null)
         {
-            loadedPanel = FXMLLoader.load(getClass().getResource(panel + ".fxml"));
-        }
-        catch(IOException ex)
-        {
-            throw new RuntimeException(ex);
+            FXMLLoader loader = new FXMLLoader(getClass().getResource(panel + ".fxml"));
+            try
+            {
+                loadedPanel = new LoadedPanel(loader.load(), loader.getController());
+            }
+            catch(IOException ex)
+            {
+                throw new RuntimeException(ex);
+            }
+            loadedPanels.put(panel, loadedPanel);
         }
-        panelContainer.setCenter(loadedPanel);
+        loadedPanel.subscribe(filterState);
+        panelContainer.setCenter(loadedPanel.root);
         currentPanel = panel;
         popOut.setDisable("welcomePanel".equals(currentPanel));
     }
@@ -144,11 +239,8 @@ public class GUIController implements Initializable
             invalidRangeLabel.setVisible(false);
             navigationButtons.setDisable(false);
             
-            // pass range values to data filter
-            SharedData.listingsFilter.setPriceFilter(fromMenuValue, toMenuValue);
-            
-            // reload the panel to display the data for the newly selected range
-            loadPanel(currentPanel);
+            // pass range values to a new data filter, and display the data for the newly selected range once it's ready
+            applyFilter(latestFilter.withPrice(fromMenuValue, toMenuValue));
         }
     }
 
@@ -167,10 +259,54 @@ public class GUIController implements Initializable
         stage.setScene(scene);
         // Get the controller...
         var controller = loader.getController();
-        // If it is the statistics controller, tell it not to save panels...
-        if (controller instanceof SharedStateController) ((SharedStateController) controller).disableSharedState();
+        // Show the current filter, but don't subscribe to it, so it won't update...
+        ListingsFilter filter = filterState.get();
+        if (controller instanceof RefreshableController) ((RefreshableController) controller).refresh(filter);
+        // If it is the statistics controller, show the same statistics as the panel being popped out...
+        if (controller instanceof StatisticGUIController) ((StatisticGUIController) controller).copyPanels((StatisticGUIController) loadedPanels.get(currentPanel).controller);
         // Let the user know it won't update...
-        stage.setTitle("AirBnB Viewer - Pop Out (Non-Updating) - " + SharedData.listingsFilter.getDescription());
+        stage.setTitle("AirBnB Viewer - Pop Out (Non-Updating) - " + filter.getDescription());
         stage.show();
     }
+    
+    /**
+     * A panel which has been loaded, with its controller, and the filter it is showing.
+     */
+    private static class LoadedPanel
+    {
+        private final Parent root;
+        private final Object controller;
+        private ListingsFilter shownFilter;
+        private FilterState.Subscription subscription;
+        
+        private LoadedPanel(Parent root, Object controller)
+        {
+            this.root = root;
+            this.controller = controller;
+        }
+        
+        /**
+         * Start showing the filter, and every change to it. Nothing is done if it is already subscribed.
+         * The panel is only refreshed if the filter isn't the one it is already showing.
+         */
+        private void subscribe(FilterState filterState)
+        {
+            if(subscription != null || !(controller instanceof RefreshableController)) return;
+            subscription = filterState.subscribe(filter -> {
+                if(filter == shownFilter) return;
+                shownFilter = filter;
+                ((RefreshableController) controller).refresh(filter);
+            });
+        }
+        
+        /**
+         * Stop showing changes to the filter, while the panel isn't on screen.
+         */
+        private void unsubscribe()
+        {
+            if(subscription == null) return;
+            subscription.cancel();
+            subscription = null;
+        }
+    }
 }
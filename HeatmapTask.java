@@ -0,0 +1,39 @@
+import javafx.concurrent.Task;
+
+/**
+ * A background task which counts the listings of a filter in each pixel of the heatmap,
+ * so the map only has to colour in the pixels on the JavaFX thread.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-27
+ */
+public class HeatmapTask extends Task<DensityGrid> {
+    // How far each listing is spread out, in pixels.
+    private static final int BLUR_RADIUS = 3;
+
+    private final ListingsFilter filter;
+    private final int width;
+    private final int height;
+
+    /**
+     * Create a task to count the listings of a filter for a heatmap.
+     *
+     * @param filter The filter with the listings to count.
+     * @param width The width of the heatmap, in pixels.
+     * @param height The height of the heatmap, in pixels.
+     */
+    public HeatmapTask(ListingsFilter filter, int width, int height) {
+        this.filter = filter;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    protected DensityGrid call() {
+        int[] rows = filter.getRows();
+        if (isCancelled()) return null;
+        DensityGrid counts = DensityGrid.of(filter.getTable(), rows, width, height);
+        if (isCancelled()) return null;
+        return counts.blurred(BLUR_RADIUS);
+    }
+}
@@ -17,13 +17,12 @@ import javafx.scene.input.*;
 
 import java.net.URL;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Controller for the Borough Window.
  * 
  * @author Skye Macdonald (k19015078) and Kevin Quah (k1921877)
- * @version 2020-03-27
+ * @version 2020-04-19
  */
 public class ListingsController implements Initializable {
     @FXML private ComboBox<String> sortingOptions;
@@ -34,10 +33,12 @@ public class ListingsController implements Initializable {
     @FXML private TableColumn<AirbnbListing, Integer> nightsColumn;
     @FXML private CheckBox reverseSort;
     @FXML private Pane pane;
+    // The listings from the filter, in ordinal order. Sorting always starts from these.
+    private PagedListings filteredListings;
     
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        sortingOptions.getItems().addAll("Host Name", "Price per Night", "Number of Reviews", "Minimum Number of Nights");
+        sortingOptions.getItems().addAll(ListingsSorter.SORT_OPTIONS);
         nameColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().getHost_name()));
         priceColumn.setCellValueFactory(data -> new ReadOnlyIntegerWrapper(data.getValue().getPrice()).asObject());
         reviewsColumn.setCellValueFactory(data -> new ReadOnlyIntegerWrapper(data.getValue().getNumberOfReviews()).asObject());
@@ -51,8 +52,9 @@ public class ListingsController implements Initializable {
      */
     public void setFilter(ListingsFilter filter) {
         ((Stage) pane.getScene().getWindow()).setTitle(filter.getDescription());
-        table.getItems().clear();
-        table.getItems().addAll(filter.getListings());
+        // The listings are only made when they are scrolled to, so this is quick even for lots of listings.
+        filteredListings = new PagedListings(filter.getTable(), filter.getRows());
+        table.setItems(filteredListings);
     }
     
     /**
@@ -69,40 +71,9 @@ public class ListingsController implements Initializable {
         // Enable reversing the sorting direction...
         reverseSort.setDisable(false);
         
-        // Get the sorted listings.
-        List<AirbnbListing> sorted = sortListings(table.getItems(), sort, reverseSort.isSelected());
-        // Replace the table with the sorted listings.
-        table.getItems().clear();
-        table.getItems().setAll(sorted);
-    }
-    
-    /**
-     * Merge sort for Airbnb listings
-     */
-    
-    private List<AirbnbListing> sortListings(Collection<AirbnbListing> unsortedList, String sortBy, boolean reverse) {
-        // Create the comparator used to sort the list...
-        Comparator<AirbnbListing> comparator;
-        switch (sortBy){
-            case "Host Name":
-                comparator = Comparator.comparing(AirbnbListing::getHost_name);
-                break;
-            case "Price per Night":
-                comparator = Comparator.comparingInt(AirbnbListing::getPrice);
-                break;
-            case "Number of Reviews":
-                comparator = Comparator.comparingInt(AirbnbListing::getNumberOfReviews);
-                break;
-            case "Minimum Number of Nights":
-                comparator = Comparator.comparingInt(AirbnbListing::getMinimumNights);
-                break;
-            default:
-                throw new IllegalArgumentException("Unexpected sorting type");
-        }
-        // Reverse it if needed...
-        if (reverse) comparator = comparator.reversed();
-        
-        return unsortedList.stream().sorted(comparator).collect(Collectors.toUnmodifiableList());
+        // Sort the filtered rows, then show them in the new order. As they start in ordinal order, the table's sort index can be used.
+        int[] sorted = ListingsSorter.sortRows(filteredListings.getTable(), filteredListings.getRows(), sort, reverseSort.isSelected());
+        table.setItems(new PagedListings(filteredListings.getTable(), sorted));
     }
     
     /**
@@ -0,0 +1,555 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fast parser for the AirBnB listings csv file, which reads it straight into a {@link ListingsTable}.
+ *
+ * The file is memory mapped, and split into chunks which always start at the beginning of a row
+ * (a newline inside a quoted value doesn't count). The chunks are then parsed at the same time on all the cores,
+ * and joined back together in order. Numbers are parsed straight from the bytes of the file, and text values
+ * are copied as UTF-8 bytes, so no String or String[] is made for each row.
+ *
+ * It reads values the same way as the opencsv CSVReader used by {@link AirbnbDataLoader#loadWithCsvReader()}:
+ * values can be quoted with ", and in quotes or part way through a value, "" or \" is a quote and \\ is a backslash.
+ * Any other backslash is dropped. A quote only starts or ends a quoted part near the start of a line or next to a comma
+ * or the end of the line; anywhere else it is kept in the value, unless there's only whitespace before it in the
+ * value, in which case the whitespace is thrown away instead. Lines can end with \n, \r\n or \r.
+ * Empty numbers become -1, like {@link AirbnbDataLoader} does.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class ListingsCsvParser {
+    // The number of columns in the csv file.
+    private static final int COLUMNS = 15;
+    // The smallest and largest size of a chunk in bytes.
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 32 << 20;
+    // The most that is mapped at once while looking for the chunk boundaries.
+    private static final long SCAN_WINDOW = 1 << 30;
+    // Powers of ten which can be represented exactly as doubles. Used to parse decimals exactly.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // The number of chunks we aim to have for each core, so the cores stay busy if some chunks are slower.
+    private final int chunksPerCore;
+    // The sizes actually used, which are only different from the constants above in tests...
+    private final long minChunkSize;
+    private final long maxChunkSize;
+    private final long scanWindow;
+
+    /**
+     * Create a parser that uses all the available cores.
+     */
+    public ListingsCsvParser() {
+        this(4);
+    }
+
+    /**
+     * Create a parser.
+     *
+     * @param chunksPerCore The number of chunks to split the file into for each core. At least 1.
+     */
+    public ListingsCsvParser(int chunksPerCore) {
+        this(chunksPerCore, MIN_CHUNK_SIZE, MAX_CHUNK_SIZE, SCAN_WINDOW);
+    }
+
+    /**
+     * Create a parser with different chunk sizes. This is so tests can split small files into lots of chunks.
+     *
+     * @param chunksPerCore The number of chunks to split the file into for each core. At least 1.
+     * @param minChunkSize The smallest size of a chunk in bytes.
+     * @param maxChunkSize The largest size of a chunk in bytes.
+     * @param scanWindow The most bytes mapped at once while looking for the chunk boundaries.
+     */
+    ListingsCsvParser(int chunksPerCore, long minChunkSize, long maxChunkSize, long scanWindow) {
+        this.chunksPerCore = Math.max(1, chunksPerCore);
+        this.minChunkSize = Math.max(1, minChunkSize);
+        this.maxChunkSize = Math.max(this.minChunkSize, maxChunkSize);
+        this.scanWindow = Math.max(1, scanWindow);
+    }
+
+    /**
+     * Parse a listings csv file. The first row is the column headers, and is skipped.
+     *
+     * @param csvFile The file to parse.
+     * @return A table holding all the listings in the file, in the same order as the file.
+     * @throws IOException If the file couldn't be read.
+     */
+    public ListingsTable parse(Path csvFile) throws IOException {
+        return parse(csvFile, null);
+    }
+
+    /**
+     * Parse a listings csv file, telling a listener how far through it is.
+     * The first row is the column headers, and is skipped.
+     *
+     * @param csvFile The file to parse.
+     * @param listener The listener to tell about progress and partial results, or null.
+     * @return A table holding all the listings in the file, in the same order as the file.
+     * @throws IOException If the file couldn't be read.
+     */
+    public ListingsTable parse(Path csvFile, ProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+            long[] boundaries = findChunkBoundaries(channel);
+            Progress progress = new Progress(boundaries, listener);
+            ListingsTable[] chunks = new ListingsTable[boundaries.length - 1];
+            // Each worker keeps taking the next chunk that nobody has started yet. This means the chunks
+            // are finished roughly in order, so the partial results grow steadily from the start of the file.
+            AtomicInteger nextChunk = new AtomicInteger();
+            Runnable worker = () -> {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunks.length) {
+                    chunks[chunk] = progress.chunkParsed(chunk, parseChunk(channel, boundaries[chunk], boundaries[chunk + 1]));
+                }
+            };
+            try {
+                // The workers run on the common pool, and this thread is a worker too.
+                int workers = Math.min(chunks.length, Runtime.getRuntime().availableProcessors());
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int i = 1; i < workers; i++) tasks.add(ForkJoinPool.commonPool().submit(worker));
+                worker.run();
+                for (ForkJoinTask<?> task : tasks) task.join();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return chunks.length == 1 ? chunks[0] : ListingsTable.concat(Arrays.asList(chunks));
+        }
+    }
+
+    /**
+     * Private helper method.
+     * Work out where each chunk starts. The first chunk starts after the header row, and every chunk starts
+     * at the beginning of a row. The last element of the array is the end of the file.
+     *
+     * @param channel The file to split into chunks.
+     * @return The start of each chunk, then the end of the file.
+     */
+    private long[] findChunkBoundaries(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int chunks = Runtime.getRuntime().availableProcessors() * chunksPerCore;
+        long chunkSize = Math.min(maxChunkSize, Math.max(minChunkSize, fileSize / chunks));
+
+        List<Long> boundaries = new ArrayList<>();
+        // The same state as ChunkParser.readRow keeps, so the rows end in the same places...
+        boolean inQuotes = false;
+        boolean inField = false;
+        // Some bytes can't be dealt with until the next byte is known (a backslash, a quote, or a \r),
+        // and that byte might be the first one of the next window, so this is kept from one window to the next.
+        byte waiting = 0;
+        // The first boundary is the end of the header row...
+        long nextBoundary = 0;
+        for (long windowStart = 0; windowStart < fileSize; windowStart += scanWindow) {
+            long windowSize = Math.min(scanWindow, fileSize - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                byte b = window.get(i);
+                long position = windowStart + i;
+                if (waiting == '\\') {
+                    waiting = 0;
+                    // An escaped quote or backslash doesn't change anything, so skip over it...
+                    if (b == '"' || b == '\\') continue;
+                } else if (waiting == '"') {
+                    waiting = 0;
+                    // Two quotes are one quote, which doesn't change whether it's in quotes...
+                    inField = !inField;
+                    if (b == '"') continue;
+                    inQuotes = !inQuotes;
+                } else if (waiting == '\r') {
+                    waiting = 0;
+                    // A \r on its own ends the line too.
+                    if (b != '\n' && !inQuotes) {
+                        inField = false;
+                        nextBoundary = addBoundary(boundaries, position, nextBoundary, chunkSize);
+                    }
+                }
+                if (b == '\\') {
+                    if (inQuotes || inField) waiting = b;
+                } else if (b == '"') {
+                    if (inQuotes || inField) {
+                        waiting = b;
+                    } else {
+                        inQuotes = true;
+                        inField = true;
+                    }
+                } else if (b == '\r') {
+                    waiting = b;
+                } else if (b == '\n') {
+                    if (!inQuotes) {
+                        inField = false;
+                        nextBoundary = addBoundary(boundaries, position + 1, nextBoundary, chunkSize);
+                    }
+                } else if (b == ',' && !inQuotes) {
+                    inField = false;
+                } else {
+                    inField = true;
+                }
+            }
+        }
+        // If there's only a header row without a newline, then there are no rows at all...
+        if (boundaries.isEmpty()) boundaries.add(fileSize);
+        if (boundaries.get(boundaries.size() - 1) != fileSize) boundaries.add(fileSize);
+        if (boundaries.size() == 1) boundaries.add(fileSize);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) result[i] = boundaries.get(i);
+        return result;
+    }
+
+    /**
+     * Private helper method.
+     * Add the start of a row as a chunk boundary, if it's far enough past the last one.
+     *
+     * @return The earliest position the next boundary can be at.
+     */
+    private static long addBoundary(List<Long> boundaries, long position, long nextBoundary, long chunkSize) {
+        if (position < nextBoundary) return nextBoundary;
+        boundaries.add(position);
+        return position + chunkSize;
+    }
+
+    /**
+     * Private helper method.
+     * Parse the rows in part of the file into a table.
+     *
+     * @param channel The file.
+     * @param start The position of the start of the first row in the chunk.
+     * @param end The position of the end of the chunk.
+     * @return A table of the rows in this chunk.
+     */
+    private ListingsTable parseChunk(FileChannel channel, long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        try {
+            // Copy the chunk out of the mapped file in one go, which is much faster than reading it a byte at a time.
+            channel.map(FileChannel.MapMode.READ_ONLY, start, bytes.length).get(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ChunkParser(bytes).parse();
+    }
+
+    /**
+     * Something that wants to know how parsing is going.
+     * The methods are called from the threads doing the parsing, but never at the same time.
+     */
+    public interface ProgressListener {
+        /**
+         * Called each time a chunk of the file has been parsed.
+         *
+         * @param bytesParsed The number of bytes of the file parsed so far.
+         * @param totalBytes The size of the file.
+         */
+        default void progress(long bytesParsed, long totalBytes) {}
+
+        /**
+         * Called every so often with the rows from the start of the file that have been parsed so far.
+         * Each partial result has more rows than the one before, and is in the same order as the file.
+         * This isn't called with the final result, which is returned by the parse method.
+         *
+         * @param rows A table with the rows parsed so far.
+         */
+        default void partialResult(ListingsTable rows) {}
+    }
+
+    /**
+     * Keeps track of which chunks have been parsed, and tells the listener.
+     * A partial result is only made once another eighth or so of the file has been parsed from the start,
+     * as it means copying all the rows parsed so far.
+     */
+    private static class Progress {
+        private final long[] boundaries;
+        private final ProgressListener listener;
+        private final ListingsTable[] parsed;
+        private long bytesParsed = 0;
+        // The number of chunks from the start of the file that have been parsed...
+        private int parsedFromStart = 0;
+        private long reportedFromStart = 0;
+
+        private Progress(long[] boundaries, ProgressListener listener) {
+            this.boundaries = boundaries;
+            this.listener = listener;
+            parsed = new ListingsTable[boundaries.length - 1];
+        }
+
+        /**
+         * Record that a chunk was parsed.
+         *
+         * @param chunk The index of the chunk.
+         * @param table The rows in the chunk.
+         * @return The rows in the chunk.
+         */
+        private ListingsTable chunkParsed(int chunk, ListingsTable table) {
+            if (listener == null) return table;
+            synchronized (this) {
+                parsed[chunk] = table;
+                bytesParsed += boundaries[chunk + 1] - boundaries[chunk];
+                listener.progress(bytesParsed, boundaries[boundaries.length - 1]);
+
+                while (parsedFromStart < parsed.length && parsed[parsedFromStart] != null) parsedFromStart++;
+                long bytesFromStart = boundaries[parsedFromStart] - boundaries[0];
+                long step = (boundaries[parsed.length] - boundaries[0]) / 8;
+                if (parsedFromStart < parsed.length && bytesFromStart - reportedFromStart >= step && bytesFromStart > reportedFromStart) {
+                    reportedFromStart = bytesFromStart;
+                    listener.partialResult(ListingsTable.concat(Arrays.asList(parsed).subList(0, parsedFromStart)));
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Parses the rows in a single chunk of the file.
+     * A chunk parser is only used by one thread.
+     */
+    private static class ChunkParser {
+        private final byte[] bytes;
+        private int position = 0;
+        // The values of the current row, after removing quotes and escapes.
+        private byte[] values = new byte[1024];
+        private final int[] valueStarts = new int[COLUMNS];
+        private final int[] valueEnds = new int[COLUMNS];
+        // Where the text columns start and end in the values, in the order ListingsTable.Builder wants them.
+        private final int[] textStarts = new int[5];
+        private final int[] textEnds = new int[5];
+        private final ListingsTable.Builder table;
+        // The borough and room type names seen so far in this chunk, and their codes.
+        private final List<byte[]> boroughNames = new ArrayList<>();
+        private final List<Integer> boroughCodes = new ArrayList<>();
+        private final List<byte[]> roomTypeNames = new ArrayList<>();
+        private final List<Integer> roomTypeCodes = new ArrayList<>();
+
+        private ChunkParser(byte[] bytes) {
+            this.bytes = bytes;
+            // A guess at the number of rows, based off of the size of the chunk.
+            table = new ListingsTable.Builder(bytes.length / 200);
+        }
+
+        /**
+         * Parse all the rows in the chunk.
+         *
+         * @return A table with the rows in the chunk.
+         */
+        private ListingsTable parse() {
+            while (position < bytes.length) {
+                int columns = readRow();
+                // Skip empty lines...
+                if (columns == 1 && valueStarts[0] == valueEnds[0]) continue;
+                // Missing columns at the end of the row are treated as empty.
+                for (int column = columns; column < COLUMNS; column++) {
+                    valueStarts[column] = 0;
+                    valueEnds[column] = 0;
+                }
+                addRow();
+            }
+            return table.build();
+        }
+
+        /**
+         * Read the next row into the values buffer, removing quotes and escapes the way opencsv's CSVParser does.
+         *
+         * @return The number of values in the row.
+         */
+        private int readRow() {
+            int length = 0;
+            int column = 0;
+            int valueStart = 0;
+            valueStarts[0] = 0;
+            // Where the current line starts. A value in quotes can go over more than one line.
+            int lineStart = position;
+            boolean inQuotes = false;
+            // Whether anything has been read since the start of the value (or the last quote). Escapes work here too.
+            boolean inField = false;
+            while (position < bytes.length) {
+                byte b = bytes[position++];
+                if (length + 1 >= values.length) values = Arrays.copyOf(values, values.length * 2);
+                if (b == '\\') {
+                    // Only a quote or a backslash can be escaped, and only in quotes or part way through a value.
+                    // Any other backslash is dropped.
+                    if ((inQuotes || inField) && position < bytes.length && (bytes[position] == '"' || bytes[position] == '\\')) {
+                        values[length++] = bytes[position++];
+                    }
+                } else if (b == '"') {
+                    if ((inQuotes || inField) && position < bytes.length && bytes[position] == '"') {
+                        // Two quotes in quotes or part way through a value means one quote...
+                        values[length++] = '"';
+                        position++;
+                    } else {
+                        inQuotes = !inQuotes;
+                        // A quote in the middle of a value (not near the start of the line, or next to a comma or the
+                        // end of the line) is kept, unless there's only whitespace before it, which is thrown away.
+                        if (charsBefore(lineStart, position - 1) >= 3 && bytes[position - 2] != ','
+                                && !isLineEnd(position) && bytes[position] != ',') {
+                            if (length > valueStart && isWhitespace(valueStart, length)) {
+                                length = valueStart;
+                            } else {
+                                values[length++] = '"';
+                            }
+                        }
+                    }
+                    inField = !inField;
+                } else if (b == '\n' || b == '\r') {
+                    // A line ends with \n, \r\n or \r. In quotes, it's a \n in the value.
+                    if (b == '\r' && position < bytes.length && bytes[position] == '\n') position++;
+                    if (!inQuotes) break;
+                    values[length++] = '\n';
+                    lineStart = position;
+                } else if (b == ',' && !inQuotes) {
+                    if (column < COLUMNS) valueEnds[column] = length;
+                    column++;
+                    if (column < COLUMNS) valueStarts[column] = length;
+                    valueStart = length;
+                    inField = false;
+                } else {
+                    values[length++] = b;
+                    inField = true;
+                }
+            }
+            if (column < COLUMNS) valueEnds[column] = length;
+            return Math.min(column + 1, COLUMNS);
+        }
+
+        /**
+         * Count the characters (as Java chars) between two positions, stopping at 3, which is all readRow needs to know.
+         */
+        private int charsBefore(int from, int to) {
+            int count = 0;
+            for (int i = from; i < to && count < 3; i++) {
+                int b = bytes[i] & 0xFF;
+                // Continuation bytes aren't a new character, and four byte characters are two chars...
+                if ((b & 0xC0) != 0x80) count += b >= 0xF0 ? 2 : 1;
+            }
+            return count;
+        }
+
+        private boolean isLineEnd(int at) {
+            return at >= bytes.length || bytes[at] == '\n' || bytes[at] == '\r';
+        }
+
+        /**
+         * Check if part of the values buffer is all whitespace, the same way as opencsv does.
+         */
+        private boolean isWhitespace(int start, int end) {
+            String value = new String(values, start, end - start, StandardCharsets.UTF_8);
+            for (int i = 0; i < value.length(); i++) if (!Character.isWhitespace(value.charAt(i))) return false;
+            return true;
+        }
+
+        /**
+         * Add the row in the values buffer to the table.
+         */
+        private void addRow() {
+            setText(0, 0);  // id
+            setText(1, 1);  // name
+            setText(2, 2);  // host id
+            setText(3, 3);  // host name
+            setText(4, 11); // last review
+            table.addEncoded(values, textStarts, textEnds,
+                    code(4, boroughNames, boroughCodes, true),
+                    parseDouble(5), parseDouble(6),
+                    code(7, roomTypeNames, roomTypeCodes, false),
+                    parseInt(8), parseInt(9), parseInt(10),
+                    parseDouble(12), parseInt(13), parseInt(14));
+        }
+
+        private void setText(int textColumn, int column) {
+            textStarts[textColumn] = valueStarts[column];
+            textEnds[textColumn] = valueEnds[column];
+        }
+
+        /**
+         * Get the code of the borough or room type in a column.
+         * The names are compared as bytes, so a String is only made the first time a name is seen in this chunk.
+         */
+        private int code(int column, List<byte[]> names, List<Integer> codes, boolean borough) {
+            int start = valueStarts[column];
+            int end = valueEnds[column];
+            for (int i = 0; i < names.size(); i++) {
+                if (Arrays.equals(names.get(i), 0, names.get(i).length, values, start, end)) return codes.get(i);
+            }
+            String name = new String(values, start, end - start, StandardCharsets.UTF_8);
+            int code = borough ? table.boroughCode(name) : table.roomTypeCode(name);
+            names.add(Arrays.copyOfRange(values, start, end));
+            codes.add(code);
+            return code;
+        }
+
+        /**
+         * Parse an int straight from the bytes of a column.
+         *
+         * @return The value of the column, or -1 if it is empty or whitespace.
+         */
+        private int parseInt(int column) {
+            int start = valueStarts[column];
+            int end = valueEnds[column];
+            // Trim whitespace...
+            while (start < end && (values[start] & 0xFF) <= ' ') start++;
+            while (end > start && (values[end - 1] & 0xFF) <= ' ') end--;
+            if (start == end) return -1;
+
+            boolean negative = values[start] == '-';
+            int i = negative || values[start] == '+' ? start + 1 : start;
+            // Anything unusual (or too long to be sure it won't overflow) is left to Integer.parseInt.
+            if (i == end || end - i > 9) return Integer.parseInt(new String(values, start, end - start, StandardCharsets.UTF_8));
+            int result = 0;
+            for (; i < end; i++) {
+                int digit = values[i] - '0';
+                if (digit < 0 || digit > 9) return Integer.parseInt(new String(values, start, end - start, StandardCharsets.UTF_8));
+                result = result * 10 + digit;
+            }
+            return negative ? -result : result;
+        }
+
+        /**
+         * Parse a double straight from the bytes of a column.
+         * Simple decimals like 51.46225 are worked out as (whole number) / (power of ten). As both of those
+         * are exact doubles, this gives exactly the same double as Double.parseDouble does. Anything else is
+         * left to Double.parseDouble.
+         *
+         * @return The value of the column, or -1.0 if it is empty or whitespace.
+         */
+        private double parseDouble(int column) {
+            int start = valueStarts[column];
+            int end = valueEnds[column];
+            // Trim whitespace...
+            while (start < end && (values[start] & 0xFF) <= ' ') start++;
+            while (end > start && (values[end - 1] & 0xFF) <= ' ') end--;
+            if (start == end) return -1.0;
+
+            boolean negative = values[start] == '-';
+            int i = negative || values[start] == '+' ? start + 1 : start;
+            long mantissa = 0;
+            int digits = 0;
+            int decimalPlaces = -1;
+            for (; i < end; i++) {
+                byte b = values[i];
+                if (b == '.' && decimalPlaces < 0) {
+                    decimalPlaces = 0;
+                    continue;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9 || ++digits > 15) return slowParseDouble(start, end);
+                mantissa = mantissa * 10 + digit;
+                if (decimalPlaces >= 0) decimalPlaces++;
+            }
+            if (digits == 0) return slowParseDouble(start, end);
+            double result = decimalPlaces > 0 ? mantissa / POWERS_OF_TEN[decimalPlaces] : mantissa;
+            return negative ? -result : result;
+        }
+
+        private double slowParseDouble(int start, int end) {
+            return Double.parseDouble(new String(values, start, end - start, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import static org.junit.Assert.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.opencsv.CSVReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * The test class ListingsCsvParserTest.
+ * This checks that the fast parser reads a file exactly the same as opencsv's CSVReader, including quoted values,
+ * escaped quotes and backslashes, newlines inside quotes and rows ending with \r\n or \r.
+ * One file has the names in quotes, and the other has values which aren't, with quotes and backslashes in the middle
+ * of them, which opencsv keeps or drops depending on where they are.
+ * The parser is made with tiny chunks and scan windows, so chunk boundaries and window edges land all over the rows.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class ListingsCsvParserTest
+{
+    // Bits of text the names are made from. Some have to be quoted, and some have escapes in them.
+    private static final String[] NAME_PARTS = {
+            "Flat", "Cosy room", "with, a comma", "a \"\"quoted\"\" word", "an \\\"escaped\\\" quote",
+            "a back\\\\slash", "two\nlines", "ends with a backslash\\\\", "\\\"", "\\\\\\\"", "50 a night"};
+    // Bits of values which aren't in quotes. Quotes and backslashes in the middle of a value are kept or dropped
+    // depending on what is around them, and some of these start a quoted part which goes over more than one line.
+    private static final String[] RAW_PARTS = {
+            "plain", "ab\"cd\"ef", "\"abc\"def", " \"q\" ", "\\\"x", "a\\\"x", "a\"\"b", "x\\\\y", "\\q", "a\\",
+            "\"two\nlines\"", "\"two\r\nlines\"", "\"two\rlines\"", "\"x\"\"y\"", "\"\"", " ", "  \"  ", "\"a,b\"c", "c\"a,b\""};
+    private static Path quotedFile;
+    private static Path rawFile;
+    private static List<AirbnbListing> quotedListings;
+    private static List<AirbnbListing> rawListings;
+
+    /**
+     * Write the files with lots of awkward rows, and read them with the CSVReader to get the expected listings.
+     */
+    @BeforeClass
+    public static void writeFiles() throws IOException {
+        Random random = new Random(2020);
+        quotedFile = writeFile(random, row -> {
+            StringBuilder name = new StringBuilder();
+            for (int part = random.nextInt(4); part >= 0; part--) name.append(NAME_PARTS[random.nextInt(NAME_PARTS.length)]).append(' ');
+            return row + ",\"" + name + "\"," + random.nextInt(1000) + "," + (random.nextBoolean() ? "Host" : "\"Host, Jr\"");
+        });
+        quotedListings = new AirbnbDataLoader().loadWithCsvReader(quotedFile);
+        rawFile = writeFile(random, row -> {
+            // Keep trying until the CSVReader reads the start of the row as the id, name, host id and host name.
+            // (Some of them open a quote and never close it, which would swallow the rest of the row.)
+            while (true) {
+                String start = (random.nextInt(4) == 0 ? "\"" + row + "\"" : String.valueOf(row)) + ","
+                        + rawValue(random) + "," + random.nextInt(1000) + "," + rawValue(random);
+                try {
+                    List<String[]> read = new CSVReader(new StringReader(start + ",Camden")).readAll();
+                    if (read.size() == 1 && read.get(0).length == 5) return start;
+                } catch (IOException e) {
+                    // An unfinished quote, so try again...
+                }
+            }
+        });
+        rawListings = new AirbnbDataLoader().loadWithCsvReader(rawFile);
+        assertEquals("The CSVReader should read every row", 100, quotedListings.size());
+        assertEquals("The CSVReader should read every row", 100, rawListings.size());
+    }
+
+    @AfterClass
+    public static void deleteFiles() throws IOException {
+        Files.deleteIfExists(quotedFile);
+        Files.deleteIfExists(rawFile);
+    }
+
+    /**
+     * Write a file of 100 rows. The id, name, host id and host name of each row are made by a function.
+     */
+    private static Path writeFile(Random random, Function<Integer, String> rowStart) throws IOException {
+        StringBuilder csv = new StringBuilder("id,name,host_id,host_name,neighbourhood,latitude,longitude,room_type,price,"
+                + "minimum_nights,number_of_reviews,last_review,reviews_per_month,calculated_host_listings_count,availability_365\n");
+        for (int row = 0; row < 100; row++) {
+            csv.append(rowStart.apply(row)).append(',')
+                    .append(random.nextBoolean() ? "Camden" : "Kingston upon Thames").append(',')
+                    .append(51 + random.nextInt(1000) / 1000.0).append(',').append(-random.nextInt(1000) / 1000.0).append(',')
+                    .append("Private room,").append(random.nextInt(500)).append(',').append(1 + random.nextInt(10)).append(',')
+                    .append(random.nextInt(100)).append(',').append(random.nextBoolean() ? "2019-07-01" : "").append(',')
+                    .append(random.nextBoolean() ? "0.25" : "").append(",1,").append(random.nextInt(366))
+                    .append(new String[] {"\n", "\r\n", "\r"}[random.nextInt(3)]);
+        }
+        Path csvFile = Files.createTempFile("listings", ".csv");
+        Files.write(csvFile, csv.toString().getBytes(StandardCharsets.UTF_8));
+        return csvFile;
+    }
+
+    private static String rawValue(Random random) {
+        StringBuilder value = new StringBuilder();
+        for (int part = random.nextInt(3); part >= 0; part--) value.append(RAW_PARTS[random.nextInt(RAW_PARTS.length)]);
+        return value.toString();
+    }
+
+    /**
+     * Test the parser with the normal chunk sizes, where the whole file is one chunk.
+     */
+    @Test
+    public void parseSameAsCsvReader() throws IOException {
+        assertSameListings(quotedListings, new ListingsCsvParser().parse(quotedFile));
+    }
+
+    /**
+     * Test the parser with a chunk for every row, and every scan window size from 5 to 17 bytes.
+     * This puts a window edge between a backslash and the quote it escapes somewhere in the file.
+     */
+    @Test
+    public void parseSameAsCsvReaderWithTinyChunks() throws IOException {
+        for (int window = 5; window <= 17; window++) {
+            assertSameListings(quotedListings, new ListingsCsvParser(4, 1, 1, window).parse(quotedFile));
+        }
+    }
+
+    /**
+     * Test the parser on values which aren't in quotes, like ab"cd"ef, "abc"def, \"x and a quote after some spaces.
+     */
+    @Test
+    public void parseValuesNotInQuotesSameAsCsvReader() throws IOException {
+        assertSameListings(rawListings, new ListingsCsvParser().parse(rawFile));
+        for (int window = 5; window <= 17; window++) {
+            assertSameListings(rawListings, new ListingsCsvParser(4, 1, 1, window).parse(rawFile));
+        }
+    }
+
+    private static void assertSameListings(List<AirbnbListing> expected, ListingsTable table) {
+        assertEquals("The parser should read every row", expected.size(), table.size());
+        for (int row = 0; row < expected.size(); row++) {
+            AirbnbListing wanted = expected.get(row);
+            AirbnbListing parsed = table.getListing(row);
+            String message = "Row " + row + " should be the same as the CSVReader read it";
+            assertEquals(message, wanted.getId(), parsed.getId());
+            assertEquals(message, wanted.getName(), parsed.getName());
+            assertEquals(message, wanted.getHost_id(), parsed.getHost_id());
+            assertEquals(message, wanted.getHost_name(), parsed.getHost_name());
+            assertEquals(message, wanted.getNeighbourhood(), parsed.getNeighbourhood());
+            assertEquals(message, wanted.getLatitude(), parsed.getLatitude(), 0);
+            assertEquals(message, wanted.getLongitude(), parsed.getLongitude(), 0);
+            assertEquals(message, wanted.getRoom_type(), parsed.getRoom_type());
+            assertEquals(message, wanted.getPrice(), parsed.getPrice());
+            assertEquals(message, wanted.getMinimumNights(), parsed.getMinimumNights());
+            assertEquals(message, wanted.getNumberOfReviews(), parsed.getNumberOfReviews());
+            assertEquals(message, wanted.getLastReview(), parsed.getLastReview());
+            assertEquals(message, wanted.getReviewsPerMonth(), parsed.getReviewsPerMonth(), 0);
+            assertEquals(message, wanted.getCalculatedHostListingsCount(), parsed.getCalculatedHostListingsCount());
+            assertEquals(message, wanted.getAvailability365(), parsed.getAvailability365());
+        }
+    }
+}
@@ -1,68 +1,95 @@
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
- * This class contains the loaded data.
- * You can change the filtering, which changes what listings are returned.
- * The original listings are still kept, so changing the filter starts from the original listings.
+ * This class contains the loaded data, and some filter settings which pick which listings are returned.
+ * A filter never changes. Changing a setting gives a new filter (like {@link #withPrice}), which starts from the
+ * same original listings, so filters can be shared between threads and panels without copying them.
+ * The listings are kept in a {@link ListingsTable}, and filtering works on the rows of the table,
+ * so {@link AirbnbListing} objects are only made when the filtered listings are actually looked at.
+ *
+ * As well as the price and borough, any other conditions can be added as a {@link ListingsQuery}.
+ *
+ * The results are worked out when they are first asked for, and kept in a cache shared by all the filters made
+ * from the same one, so filters with the same settings share their results.
  * 
  * @author Skye Macdonald (k19015078)
- * @version 2020-03-27
+ * @version 2020-04-27
  */
-public class ListingsFilter implements Cloneable {
+public final class ListingsFilter {
+    // The price index is used when at most 1/INDEX_FRACTION of the listings are in the range.
+    private static final int INDEX_FRACTION = 8;
+    // The limits of the result cache. It is only worth keeping a few results, but they can be big...
+    private static final int CACHE_ENTRIES = 32;
+    private static final long CACHE_BYTES = 64L << 20;
     // The original listings will which be filtered, this doesn't change.
-    private final Collection<AirbnbListing> originalListings;
-    // A cache of the listings after being filtered. If null it means a filter has changed.
-    private Collection<AirbnbListing> filteredListings;
-    // A cache of the statistics of the listings after being filtered. If null it means a filter has changed.
-    private Statistics statistics;
-    // A cache of the count of properties per borough
-    private Map<String, Integer> propertiesPerBorough;
+    private final ListingsTable originalListings;
+    // A cache of the results for the filter settings used recently. This is shared by all the filters made from this one.
+    private final LruCache<Key, FilterResult> resultCache;
     // Used by the price filter...
-    private boolean priceFilter = false;
-    private int priceFilterLower = 0;
-    private int priceFilterUpper = Integer.MAX_VALUE;
+    private final boolean priceFilter;
+    private final int priceFilterLower;
+    private final int priceFilterUpper;
     // The borough filter... null means there is no borough filter.
-    private String boroughFilter = null;
+    private final String boroughFilter;
+    // Any other conditions... null means there aren't any.
+    private final ListingsQuery query;
+    // The results for these settings, found in the cache the first time they are needed.
+    private volatile FilterResult result;
 
     /**
      * The public constructor. This is used by external code to load the data.
      * This will automatically use the {@link AirbnbDataLoader} to load the listings.
      */
     public ListingsFilter() {
-        originalListings = new AirbnbDataLoader().load();
+        this(new AirbnbDataLoader().loadTable());
     }
 
     /**
-     * Private constructor used by the clone method.
-     * This copies all the fields of the original object given.
+     * Create a filter for listings that have already been loaded, which doesn't filter out any of them.
      * 
-     * @param original The object to copy the fields from
+     * @param listings The listings which will be filtered.
      */
-    private ListingsFilter(ListingsFilter original) {
-        originalListings = original.originalListings;
-        filteredListings = original.filteredListings;
-        statistics = original.statistics;
-        priceFilter = original.priceFilter;
-        priceFilterUpper = original.priceFilterUpper;
-        priceFilterLower = original.priceFilterLower;
-        boroughFilter = original.boroughFilter;
-        propertiesPerBorough = original.propertiesPerBorough;
+    public ListingsFilter(ListingsTable listings) {
+        this(listings, new LruCache<>(CACHE_ENTRIES, CACHE_BYTES, FilterResult::estimateBytes), false, 0, Integer.MAX_VALUE, null, null);
     }
 
     /**
-     * Set the price filter, given a lower and upper bound.
+     * Private constructor used by the methods which change a setting.
+     */
+    private ListingsFilter(ListingsTable listings, LruCache<Key, FilterResult> resultCache,
+                           boolean priceFilter, int priceFilterLower, int priceFilterUpper, String boroughFilter, ListingsQuery query) {
+        this.originalListings = listings;
+        this.resultCache = resultCache;
+        this.priceFilter = priceFilter;
+        this.priceFilterLower = priceFilterLower;
+        this.priceFilterUpper = priceFilterUpper;
+        this.boroughFilter = boroughFilter;
+        this.query = query;
+    }
+
+    /**
+     * Create a filter with the same settings as this one, but for different listings.
+     * This is used when more of the listings have been loaded.
+     * 
+     * @param listings The listings the new filter will filter.
+     * @return A filter for the listings given, with the same settings as this one.
+     */
+    public ListingsFilter withListings(ListingsTable listings) {
+        // The results are for different listings, so the cache can't be shared...
+        return new ListingsFilter(listings, new LruCache<>(CACHE_ENTRIES, CACHE_BYTES, FilterResult::estimateBytes),
+                priceFilter, priceFilterLower, priceFilterUpper, boroughFilter, query);
+    }
+
+    /**
+     * Create a filter like this one, with a different price filter.
      * 
      * @param lower The lowest price allowed. (inclusive)
      * @param upper The highest price limit. (inclusive)
+     * @return A filter with the price range given.
      */
-    public void setPriceFilter(int lower, int upper) {
-        // Clear the cache if anything changed!
-        if (priceFilter == false || priceFilterUpper != upper || priceFilterUpper != lower) clearCache();
-        
-        priceFilter = true;
-        priceFilterLower = lower;
-        priceFilterUpper = upper;
+    public ListingsFilter withPrice(int lower, int upper) {
+        if (priceFilter && priceFilterLower == lower && priceFilterUpper == upper) return this;
+        return new ListingsFilter(originalListings, resultCache, true, lower, upper, boroughFilter, query);
     }
 
     /**
@@ -86,35 +113,55 @@ public class ListingsFilter implements Cloneable {
     }
     
     /**
-     * Remove the price filter.
+     * Create a filter like this one, without the price filter.
+     * 
+     * @return A filter which doesn't filter by price.
      */
-    public void unsetPriceFilter() {
-        // Clear the cache if anything changed!
-        if (priceFilter) clearCache();
-        
-        priceFilter = false;
+    public ListingsFilter withoutPrice() {
+        if (!priceFilter) return this;
+        return new ListingsFilter(originalListings, resultCache, false, 0, Integer.MAX_VALUE, boroughFilter, query);
     }
 
     /**
-     * Set the borough filter.
+     * Create a filter like this one, with a different borough filter.
      * 
      * @param borough The borough to filter to. MUST NOT BE NULL!
+     * @return A filter for the borough given.
      */
-    public void setBoroughFilter(String borough) {
-        // If the filter changed, then clear the cache...
-        if (!borough.equals(boroughFilter)) clearCache();
-        
-        boroughFilter = borough;
+    public ListingsFilter withBorough(String borough) {
+        Objects.requireNonNull(borough);
+        if (borough.equals(boroughFilter)) return this;
+        return new ListingsFilter(originalListings, resultCache, priceFilter, priceFilterLower, priceFilterUpper, borough, query);
     }
 
     /**
-     * Remove the borough filter.
+     * Create a filter like this one, without the borough filter.
+     * 
+     * @return A filter which doesn't filter by borough.
      */
-    public void unsetBoroughFilter() {
-        // If the filter changed, then we need to clear the cache...
-        if (boroughFilter != null) clearCache();
-        
-        boroughFilter = null;
+    public ListingsFilter withoutBorough() {
+        if (boroughFilter == null) return this;
+        return new ListingsFilter(originalListings, resultCache, priceFilter, priceFilterLower, priceFilterUpper, null, query);
+    }
+
+    /**
+     * Create a filter like this one, with some other conditions as well as the price and borough.
+     * 
+     * @param query The other conditions, or null for none.
+     * @return A filter with the conditions given.
+     */
+    public ListingsFilter withQuery(ListingsQuery query) {
+        if (Objects.equals(this.query, query)) return this;
+        return new ListingsFilter(originalListings, resultCache, priceFilter, priceFilterLower, priceFilterUpper, boroughFilter, query);
+    }
+
+    /**
+     * Get the other conditions of the filter.
+     * 
+     * @return The other conditions, or null if there aren't any.
+     */
+    public ListingsQuery getQuery() {
+        return query;
     }
 
     /**
@@ -123,10 +170,17 @@ public class ListingsFilter implements Cloneable {
      * @return The {@link Statistics} object of the filtered listings
      */
     public Statistics getStatistics() {
-        // If the statistics cache was cleared, then 
-        if (statistics == null) statistics = new Statistics(getListings());
+        FilterResult result = getResult();
+        // If the statistics haven't been worked out for these settings yet, then do that now...
+        if (result.statistics == null) {
+            // If the price range lines up with the price cube, then the statistics can be added up from that...
+            PriceCube cube = originalListings.priceCube();
+            if (canUseCube(cube)) result.statistics = cube.accumulate(originalListings, getLowerBound(), getUpperBound(), getBoroughCode()).toStatistics();
+            else result.statistics = new Statistics(originalListings, getRows());
+            updateCache(result);
+        }
         
-        return statistics;
+        return result.statistics;
     }
 
     /**
@@ -135,14 +189,36 @@ public class ListingsFilter implements Cloneable {
      * @return A read only collection of filtered listings.
      */
     public Collection<AirbnbListing> getListings() {
-        // If the filtered listing cache is clear, then fill it. 
-        if (filteredListings == null) filteredListings = filterListings(originalListings);
-        return filteredListings;
+        return originalListings.view(getRows());
+    }
+
+    /**
+     * Get the ordinals of the filtered rows in the {@link ListingsTable}, in ascending order.
+     * 
+     * @return The filtered rows. This array is shared, so it must not be changed!
+     */
+    public int[] getRows() {
+        FilterResult result = getResult();
+        // If the rows haven't been found for these settings yet, then find them. 
+        if (result.rows == null) {
+            result.rows = filterListings(originalListings);
+            updateCache(result);
+        }
+        return result.rows;
+    }
+
+    /**
+     * Get the table holding the listings which are filtered.
+     * 
+     * @return The table of all the listings, before filtering.
+     */
+    public ListingsTable getTable() {
+        return originalListings;
     }
 
     /**
      * Get a description of the listings from this filter at the current settings.
-     * It describes the borough, and the price range.
+     * It describes the borough, the price range and any other conditions.
      * 
      * @return A description of the current filter settings.
      */
@@ -167,6 +243,11 @@ public class ListingsFilter implements Cloneable {
                 stringBuilder.append(priceFilterUpper);
             }
         }
+        if (query != null) {
+            if (stringBuilder.charAt(stringBuilder.length() - 1) != ' ') stringBuilder.append(' ');
+            stringBuilder.append("where ");
+            stringBuilder.append(query);
+        }
         return stringBuilder.toString();
     }
 
@@ -176,66 +257,188 @@ public class ListingsFilter implements Cloneable {
      * @return A map which has a count of properties for each borough name.
      */
     public Map<String, Integer> getCountOfPropertiesPerBorough() {
-        if (propertiesPerBorough == null) {
-            // If there is no value cached, then we need to recalculate it...
-            propertiesPerBorough = getListings().stream().collect(
-                    // We want an unmodifiable map...
-                    Collectors.toUnmodifiableMap(
-                            // The key is the neighbourhood...
-                            AirbnbListing::getNeighbourhood,
-                            // And to count it, every time to add 1. If it's new we add 1, and if it's not new we sum 1 + the existing value.
-                            listing -> 1, Integer::sum));
+        FilterResult result = getResult();
+        if (result.propertiesPerBorough == null) {
+            // Turn the codes back into names. We only want boroughs with listings in them.
+            int[] counts = getCountPerBorough();
+            Map<String, Integer> countsByName = new HashMap<>();
+            for (int borough = 0; borough < counts.length; borough++) {
+                if (counts[borough] > 0) countsByName.put(originalListings.boroughNames()[borough], counts[borough]);
+            }
+            // We want an unmodifiable map...
+            result.propertiesPerBorough = Collections.unmodifiableMap(countsByName);
+            updateCache(result);
+        }
+        
+        return result.propertiesPerBorough;
+    }
+
+    /**
+     * Get the number of filtered listings in each borough, by borough code. The code of a borough in the
+     * table's {@link BoroughCatalog} is its id, so this can be used to look up the boroughs on the map.
+     * The counts are worked out in one pass, without making a list of the filtered rows (unless it is already made).
+     * 
+     * @return The count for each borough code. This array is shared, so it must not be changed!
+     */
+    public int[] getCountPerBorough() {
+        FilterResult result = getResult();
+        if (result.boroughCounts == null) {
+            // If there is no value cached, then we need to count them...
+            int[] boroughs = originalListings.boroughs();
+            int[] counts = new int[originalListings.boroughNames().length];
+            int boroughCode = getBoroughCode();
+            int[] rows = result.rows;
+            PriceCube cube = originalListings.priceCube();
+            if (rows != null) {
+                // The rows are already found, so just count them...
+                for (int row : rows) counts[boroughs[row]]++;
+            } else if (query != null) {
+                counts = getFullQuery().countPerBorough(originalListings);
+            } else if (boroughFilter != null) {
+                // Only the filtered borough counts, and the price index can count that straight away...
+                if (boroughCode >= 0) counts[boroughCode] = originalListings.priceIndex().countInRange(getLowerBound(), getUpperBound(), boroughCode);
+            } else if (canUseCube(cube)) {
+                // The price cube already has them counted if the range lines up...
+                counts = cube.countPerBorough(getLowerBound(), getUpperBound());
+            } else {
+                int[] prices = originalListings.prices();
+                int lower = getLowerBound();
+                int upper = getUpperBound();
+                for (int row = 0; row < originalListings.size(); row++) {
+                    int price = prices[row];
+                    if (price >= lower && price <= upper) counts[boroughs[row]]++;
+                }
+            }
+            result.boroughCounts = counts;
+            updateCache(result);
         }
         
-        return propertiesPerBorough;
+        return result.boroughCounts;
     }
     
     /**
      * Private helper method.
-     * Create an unmodifiable collection of listings, filtered using the rules in this object.
+     * Check if the filter can be answered by adding up cells of the price cube.
+     * The price range has to line up with the buckets, the borough (if there is one) has to be in the table, and there can't be other conditions.
+     */
+    private boolean canUseCube(PriceCube cube) {
+        return query == null && cube.supportsRange(getLowerBound(), getUpperBound()) && (boroughFilter == null || getBoroughCode() >= 0);
+    }
+
+    // The price range and borough code actually used when filtering...
+    private int getLowerBound() { return priceFilter ? priceFilterLower : Integer.MIN_VALUE; }
+    private int getUpperBound() { return priceFilter ? priceFilterUpper : Integer.MAX_VALUE; }
+    private int getBoroughCode() { return boroughFilter == null ? -1 : originalListings.getBoroughCode(boroughFilter); }
+
+    /**
+     * Private helper method.
+     * Get the other conditions with the price and borough added to them, for the query planner.
+     */
+    private ListingsQuery getFullQuery() {
+        List<ListingsQuery> conditions = new ArrayList<>();
+        if (priceFilter) conditions.add(ListingsQuery.priceBetween(priceFilterLower, priceFilterUpper));
+        if (boroughFilter != null) conditions.add(ListingsQuery.inBoroughs(boroughFilter));
+        conditions.add(query);
+        return ListingsQuery.and(conditions);
+    }
+
+    /**
+     * Private helper method.
+     * Find the rows of the listings that pass the rules in this object.
      * 
      * @param listings The listings to filter.
-     * @return The filtered listings
+     * @return The ordinals of the rows that passed the filter, in ascending order.
+     */
+    private int[] filterListings(ListingsTable listings) {
+        // With other conditions, the price and borough are added to them and the query planner finds the rows...
+        if (query != null) return getFullQuery().rows(listings);
+        
+        int[] prices = listings.prices();
+        // The borough filter is checked using its code, so we don't compare strings for every row.
+        // If the borough has no listings, nothing can pass the filter.
+        int boroughCode = getBoroughCode();
+        if (boroughFilter != null && boroughCode < 0) return new int[0];
+        
+        int lower = getLowerBound();
+        int upper = getUpperBound();
+        // If only a small part of the listings (in the borough) are in the price range, it's quicker to find them with the price index.
+        // Otherwise we'd sort nearly all the rows back into order, and going through them all is quicker...
+        PriceIndex index = listings.priceIndex();
+        int candidates = boroughCode >= 0 ? listings.categoryIndex().countInBorough(boroughCode) : listings.size();
+        if (index.countInRange(lower, upper, boroughCode) <= candidates / INDEX_FRACTION) return index.rowsInRange(lower, upper, boroughCode);
+        
+        // If there is a borough filter, only the rows in the borough need looking at...
+        if (boroughCode >= 0) {
+            BitSet boroughRows = listings.categoryIndex().boroughRows(boroughCode);
+            int[] rows = new int[listings.categoryIndex().countInBorough(boroughCode)];
+            int count = 0;
+            for (int row = boroughRows.nextSetBit(0); row >= 0; row = boroughRows.nextSetBit(row + 1)) {
+                int price = prices[row];
+                if (price >= lower && price <= upper) rows[count++] = row;
+            }
+            return Arrays.copyOf(rows, count);
+        }
+        
+        int[] rows = new int[listings.size()];
+        int count = 0;
+        for (int row = 0; row < rows.length; row++) {
+            // The price filter
+            int price = prices[row];
+            if (price < lower || price > upper) continue;
+            rows[count++] = row;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Private helper method.
+     * Get the results for the current settings, from the shared cache if they have been used recently.
      */
-    private Collection<AirbnbListing> filterListings(Collection<AirbnbListing> listings) {
-        return listings.stream()
-                // The price filter
-                .filter(listing -> {
-                    if (!priceFilter) return true;
-                    else {
-                        int price = listing.getPrice();
-                        return (price >= priceFilterLower) 
-                            && (price <= priceFilterUpper); 
-                    }
-                })
-                // The borough filter
-                .filter(listing -> (boroughFilter == null) || listing.getNeighbourhood().equals(boroughFilter))
-                // And we want to return an unmodifiable list...
-                .collect(Collectors.toUnmodifiableList());
+    private FilterResult getResult() {
+        FilterResult result = this.result;
+        if (result == null) {
+            Key key = new Key(getLowerBound(), getUpperBound(), boroughFilter, query);
+            // The cache is shared between threads, so make sure two of them don't both add a result...
+            synchronized (resultCache) {
+                result = resultCache.get(key);
+                if (result == null) {
+                    result = new FilterResult(key);
+                    resultCache.put(key, result);
+                }
+            }
+            this.result = result;
+        }
+        return result;
     }
 
     /**
      * Private helper method.
-     * Clear the cache of the filtered listings.
-     * Used when the filters change.
+     * Put a result in the cache again once more of it has been worked out, so the cache knows how big it is now.
      */
-    private void clearCache() {
-        filteredListings = null;
-        statistics = null;
-        propertiesPerBorough = null;
+    private void updateCache(FilterResult result) {
+        resultCache.put(result.key, result);
     }
 
     /**
-     * Create a copy of this object.
+     * Get the number of times the results for some filter settings were found in the cache.
+     * The cache is shared with all the filters made from this one.
      * 
-     * @return A copy of this object
+     * @return The number of cache hits.
      */
-    @Override
-    public ListingsFilter clone() {
-        return new ListingsFilter(this);
+    public long getCacheHits() {
+        return resultCache.getHits();
+    }
+
+    /**
+     * Get the number of times the results for some filter settings had to be worked out again.
+     * 
+     * @return The number of cache misses.
+     */
+    public long getCacheMisses() {
+        return resultCache.getMisses();
     }
 
-    // Code generated by IDE
+    // Filters are equal if they filter the same table in the same way. The table is compared by its token, not by its listings...
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -244,13 +447,71 @@ public class ListingsFilter implements Cloneable {
         return priceFilter == that.priceFilter &&
                 priceFilterLower == that.priceFilterLower &&
                 priceFilterUpper == that.priceFilterUpper &&
-                originalListings.equals(that.originalListings) &&
-                Objects.equals(boroughFilter, that.boroughFilter);
+                originalListings.getToken() == that.originalListings.getToken() &&
+                Objects.equals(boroughFilter, that.boroughFilter) &&
+                Objects.equals(query, that.query);
     }
 
-    // Code generated by IDE
     @Override
     public int hashCode() {
-        return Objects.hash(originalListings, priceFilter, priceFilterLower, priceFilterUpper, boroughFilter);
+        return Objects.hash(originalListings.getToken(), priceFilter, priceFilterLower, priceFilterUpper, boroughFilter, query);
+    }
+
+    /**
+     * The normalised filter settings, used as the key of the result cache.
+     * Any new kind of filter needs adding here, or different filters would share results!
+     */
+    private static final class Key {
+        private final int lower;
+        private final int upper;
+        private final String borough;
+        private final ListingsQuery query;
+
+        Key(int lower, int upper, String borough, ListingsQuery query) {
+            this.lower = lower;
+            this.upper = upper;
+            this.borough = borough;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return lower == that.lower && upper == that.upper && Objects.equals(borough, that.borough) && Objects.equals(query, that.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lower, upper, borough, query);
+        }
+    }
+
+    /**
+     * The results for some filter settings. Each one is only worked out when it is first asked for.
+     * They are volatile since the results can be shared between threads.
+     */
+    private static final class FilterResult {
+        private final Key key;
+        private volatile int[] rows;
+        private volatile Statistics statistics;
+        private volatile int[] boroughCounts;
+        private volatile Map<String, Integer> propertiesPerBorough;
+
+        FilterResult(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Roughly how many bytes these results use. Only the rows can get really big.
+         */
+        long estimateBytes() {
+            int[] rows = this.rows;
+            int[] boroughCounts = this.boroughCounts;
+            Map<String, Integer> counts = propertiesPerBorough;
+            return 128 + (rows == null ? 0 : 16 + 4L * rows.length) + (boroughCounts == null ? 0 : 16 + 4L * boroughCounts.length)
+                    + (counts == null ? 0 : 64L * counts.size()) + (statistics == null ? 0 : 128);
+        }
     }
 }
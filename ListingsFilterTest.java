@@ -0,0 +1,133 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The test class ListingsFilterTest.
+ * The count per borough and the statistics of a filter can come from several places: the rows already found,
+ * the query planner, the price index, the price cube, or a pass over the price column. This checks that every
+ * one of them gives the same answer as counting the filtered rows directly, for price ranges which line up with
+ * the price cube's buckets and ones which don't, including no limit at either end.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class ListingsFilterTest
+{
+    // Prices on and either side of the bucket edges, with -1 for a missing price like the loader gives.
+    private static final int[] EDGE_PRICES = {-1, 0, 1, 99, 100, 101, 500, 999, 1000, 1001, 25000};
+    // Price ranges, some lined up with the buckets and some not. MIN_VALUE and MAX_VALUE mean no limit.
+    private static final int[][] PRICE_RANGES = {
+            {0, 100}, {100, 500}, {0, 1000}, {1000, Integer.MAX_VALUE}, {Integer.MIN_VALUE, 300},
+            {Integer.MIN_VALUE, Integer.MAX_VALUE}, {150, 420}, {1, 99}, {-1, -1}, {999, 1001}, {600, 200}};
+    // A borough from the catalog, one which isn't in the catalog, and one with no listings at all.
+    private static final String[] BOROUGHS = {"Camden", "Walford", "Nowhere"};
+
+    private final ListingsTable table = randomTable(3000);
+
+    /**
+     * Test the count per borough with only a price filter, which uses the price cube or a pass over the prices.
+     */
+    @Test
+    public void countPerBoroughWithPrice() {
+        for (int[] range : PRICE_RANGES) {
+            assertSameAsRows(new ListingsFilter(table).withPrice(range[0], range[1]));
+        }
+        assertSameAsRows(new ListingsFilter(table));
+    }
+
+    /**
+     * Test the count per borough with a borough filter, which uses the price index.
+     */
+    @Test
+    public void countPerBoroughWithBorough() {
+        for (String borough : BOROUGHS) {
+            assertSameAsRows(new ListingsFilter(table).withBorough(borough));
+            for (int[] range : PRICE_RANGES) {
+                assertSameAsRows(new ListingsFilter(table).withPrice(range[0], range[1]).withBorough(borough));
+            }
+        }
+    }
+
+    /**
+     * Test the count per borough with other conditions, which uses the query planner.
+     */
+    @Test
+    public void countPerBoroughWithQuery() {
+        ListingsQuery query = ListingsQuery.reviewsAtLeast(50);
+        assertSameAsRows(new ListingsFilter(table).withQuery(query));
+        for (int[] range : PRICE_RANGES) {
+            assertSameAsRows(new ListingsFilter(table).withPrice(range[0], range[1]).withQuery(query));
+            assertSameAsRows(new ListingsFilter(table).withPrice(range[0], range[1]).withBorough("Camden").withQuery(query));
+        }
+    }
+
+    /**
+     * Test the count per borough once the rows have already been found, which counts those rows.
+     */
+    @Test
+    public void countPerBoroughFromFoundRows() {
+        for (int[] range : PRICE_RANGES) {
+            ListingsFilter filter = new ListingsFilter(table).withPrice(range[0], range[1]);
+            int[] rows = filter.getRows();
+            assertArrayEquals("The counts from the found rows should be right", countRows(rows), filter.getCountPerBorough());
+        }
+    }
+
+    /**
+     * Test that the count map agrees with the count array.
+     */
+    @Test
+    public void countMapSameAsArray() {
+        ListingsFilter filter = new ListingsFilter(table).withPrice(100, 500);
+        int[] counts = filter.getCountPerBorough();
+        for (int borough = 0; borough < counts.length; borough++) {
+            Integer count = filter.getCountOfPropertiesPerBorough().get(table.boroughNames()[borough]);
+            assertEquals("The map should have the same count as the array", counts[borough], count == null ? 0 : count);
+        }
+    }
+
+    /**
+     * Check the counts and statistics of a filter against its rows. Each thing is worked out with a new filter
+     * (so a new cache), so they don't just come from the results of each other.
+     */
+    private void assertSameAsRows(ListingsFilter filter) {
+        int[] rows = filter.withListings(table).getRows();
+        String description = filter.getDescription();
+        assertArrayEquals(description + " should count the same as its rows", countRows(rows), filter.getCountPerBorough());
+
+        Statistics expected = new Statistics(table, rows);
+        Statistics statistics = filter.withListings(table).getStatistics();
+        assertEquals(description + " available properties", expected.getTotalAvailableProperties(), statistics.getTotalAvailableProperties());
+        assertEquals(description + " entire homes", expected.getEntireHomesOrApartments(), statistics.getEntireHomesOrApartments());
+        assertEquals(description + " reviews per property", expected.getReviewsPerProperty(), statistics.getReviewsPerProperty(), 1e-9);
+        assertEquals(description + " properties per borough", expected.getPropertiesPerBorough(), statistics.getPropertiesPerBorough(), 1e-9);
+        assertEquals(description + " reviews per month", expected.getTotalReviewsPerMonth(), statistics.getTotalReviewsPerMonth(), 1e-6);
+        assertEquals(description + " most expensive borough", expected.getMostExpensiveBorough(), statistics.getMostExpensiveBorough());
+        assertEquals(description + " most reviewed borough", expected.getMostReviewedBorough(), statistics.getMostReviewedBorough());
+        assertEquals(description + " most actively reviewed borough", expected.getMostActivelyReviewedBorough(), statistics.getMostActivelyReviewedBorough());
+    }
+
+    private int[] countRows(int[] rows) {
+        int[] counts = new int[table.boroughNames().length];
+        for (int row : rows) counts[table.boroughs()[row]]++;
+        return counts;
+    }
+
+    private static ListingsTable randomTable(int count) {
+        Random random = new Random(2020);
+        String[] boroughs = {"Camden", "Hackney", "Westminster", "Walford", "Leytown"};
+        String[] roomTypes = {"Entire home/apt", "Private room", "Shared room"};
+        List<AirbnbListing> listings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int price = random.nextBoolean() ? EDGE_PRICES[random.nextInt(EDGE_PRICES.length)] : random.nextInt(1500);
+            listings.add(new AirbnbListing("l" + i, "Test " + i, "h" + i, "Host", boroughs[random.nextInt(boroughs.length)],
+                    51 + random.nextDouble(), random.nextDouble(), roomTypes[random.nextInt(roomTypes.length)], price,
+                    1 + random.nextInt(10), random.nextInt(200), "01/01/2020", random.nextInt(1000) / 100.0, 1, random.nextInt(366)));
+        }
+        return ListingsTable.of(listings);
+    }
+}
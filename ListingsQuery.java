@@ -0,0 +1,594 @@
+import java.util.*;
+
+/**
+ * A condition on the listings, made out of simple conditions on the columns of a {@link ListingsTable}
+ * (a price range, some boroughs, a box on the map...) combined with {@link #and}, {@link #or} and {@link #not}.
+ * Queries never change, and two queries made the same way are equal, so they can be used as cache keys.
+ *
+ * Finding the rows which match is planned rather than just checking every condition on every row.
+ * The conditions in an {@link #and} are done in order of how many rows they could match, working that out from
+ * the indexes of the table. The first one finds its rows with an index if it can, and every one after that only
+ * looks at the rows which are left, so adding more conditions doesn't mean going through the whole table again.
+ * A condition without an index (or with too many rows for the index to help) goes through its column in a
+ * simple loop over the array.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public abstract class ListingsQuery {
+    // An index is only used when at most 1/INDEX_FRACTION of the rows being looked at could match.
+    private static final int INDEX_FRACTION = 8;
+
+    // Only the subclasses in here can make a query...
+    private ListingsQuery() {
+    }
+
+    /**
+     * Listings with a price in a range.
+     *
+     * @param lower The lowest price (inclusive).
+     * @param upper The highest price (inclusive).
+     * @return The query.
+     */
+    public static ListingsQuery priceBetween(int lower, int upper) {
+        return new IntRange(IntColumn.PRICE, lower, upper);
+    }
+
+    /**
+     * Listings with a minimum number of nights in a range.
+     *
+     * @param lower The lowest minimum number of nights (inclusive).
+     * @param upper The highest minimum number of nights (inclusive).
+     * @return The query.
+     */
+    public static ListingsQuery minimumNightsBetween(int lower, int upper) {
+        return new IntRange(IntColumn.MINIMUM_NIGHTS, lower, upper);
+    }
+
+    /**
+     * Listings with at least some reviews.
+     *
+     * @param reviews The lowest number of reviews (inclusive).
+     * @return The query.
+     */
+    public static ListingsQuery reviewsAtLeast(int reviews) {
+        return new IntRange(IntColumn.REVIEWS, reviews, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Listings which are available on at least one day of the year.
+     *
+     * @return The query.
+     */
+    public static ListingsQuery available() {
+        return new IntRange(IntColumn.AVAILABILITY, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Listings in any of some boroughs.
+     *
+     * @param boroughs The names of the boroughs.
+     * @return The query.
+     */
+    public static ListingsQuery inBoroughs(String... boroughs) {
+        return new Category(true, boroughs);
+    }
+
+    /**
+     * Listings with any of some room types.
+     *
+     * @param roomTypes The room types, like "Entire home/apt".
+     * @return The query.
+     */
+    public static ListingsQuery withRoomTypes(String... roomTypes) {
+        return new Category(false, roomTypes);
+    }
+
+    /**
+     * Listings inside a box on the map. Listings without a location are never inside it.
+     *
+     * @param south The lowest latitude (inclusive).
+     * @param west The lowest longitude (inclusive).
+     * @param north The highest latitude (inclusive).
+     * @param east The highest longitude (inclusive).
+     * @return The query.
+     */
+    public static ListingsQuery within(double south, double west, double north, double east) {
+        return new BoundingBox(south, west, north, east);
+    }
+
+    /**
+     * Listings within some distance of a point on the map. Listings without a location are never within it.
+     *
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param metres The distance from the point (inclusive).
+     * @return The query.
+     */
+    public static ListingsQuery withinDistance(double latitude, double longitude, double metres) {
+        return new Radius(latitude, longitude, metres);
+    }
+
+    /**
+     * Listings which match all of some queries. With no queries, every listing matches.
+     *
+     * @param queries The queries.
+     * @return The query.
+     */
+    public static ListingsQuery and(ListingsQuery... queries) {
+        return and(Arrays.asList(queries));
+    }
+
+    /**
+     * Listings which match all of some queries. With no queries, every listing matches.
+     *
+     * @param queries The queries.
+     * @return The query.
+     */
+    public static ListingsQuery and(List<ListingsQuery> queries) {
+        return queries.size() == 1 ? queries.get(0) : new Combination(true, queries);
+    }
+
+    /**
+     * Listings which match any of some queries. With no queries, no listing matches.
+     *
+     * @param queries The queries.
+     * @return The query.
+     */
+    public static ListingsQuery or(ListingsQuery... queries) {
+        return queries.length == 1 ? queries[0] : new Combination(false, Arrays.asList(queries));
+    }
+
+    /**
+     * Listings which don't match a query.
+     *
+     * @param query The query.
+     * @return The query.
+     */
+    public static ListingsQuery not(ListingsQuery query) {
+        return query instanceof Not ? ((Not) query).query : new Not(query);
+    }
+
+    /**
+     * Find the rows of a table which match this query.
+     *
+     * @param table The table to look in.
+     * @return The ordinals of the rows which match, in ascending order.
+     */
+    public int[] rows(ListingsTable table) {
+        return CategoryIndex.toRows(matching(table, all(table)));
+    }
+
+    /**
+     * Count the rows of a table which match this query in each borough, without making a list of them.
+     *
+     * @param table The table to look in.
+     * @return The number of matching rows with each borough code.
+     */
+    public int[] countPerBorough(ListingsTable table) {
+        BitSet found = matching(table, all(table));
+        int[] boroughs = table.boroughs();
+        int[] counts = new int[table.boroughNames().length];
+        for (int row = found.nextSetBit(0); row >= 0; row = found.nextSetBit(row + 1)) counts[boroughs[row]]++;
+        return counts;
+    }
+
+    /**
+     * Find the rows which match, out of some rows.
+     *
+     * @param table The table to look in.
+     * @param candidates The rows to look at. This isn't changed.
+     * @return A new bitset of the candidates which match.
+     */
+    abstract BitSet matching(ListingsTable table, BitSet candidates);
+
+    /**
+     * The most rows of the table which could match, worked out from the indexes without looking at the rows.
+     * Conditions which have no index say every row could match.
+     */
+    abstract int estimate(ListingsTable table);
+
+    @Override
+    public abstract boolean equals(Object o);
+
+    @Override
+    public abstract int hashCode();
+
+    /**
+     * A description of the query, like "prices from £100 to £200".
+     */
+    @Override
+    public abstract String toString();
+
+    private static BitSet all(ListingsTable table) {
+        BitSet rows = new BitSet(table.size());
+        rows.set(0, table.size());
+        return rows;
+    }
+
+    /**
+     * Check whether to use an index, which could find some rows, instead of looking at the candidates one by one.
+     */
+    private static boolean worthUsingIndex(int found, BitSet candidates) {
+        return found <= candidates.cardinality() / INDEX_FRACTION;
+    }
+
+    // The int columns that can be queried...
+    private enum IntColumn {
+        PRICE, MINIMUM_NIGHTS, REVIEWS, AVAILABILITY;
+
+        int[] of(ListingsTable table) {
+            switch (this) {
+                case PRICE:
+                    return table.prices();
+                case MINIMUM_NIGHTS:
+                    return table.minimumNights();
+                case REVIEWS:
+                    return table.numberOfReviews();
+                default:
+                    return table.availability365();
+            }
+        }
+    }
+
+    /**
+     * An int column in a range. Prices can use the price index, and every other column is gone through.
+     */
+    private static final class IntRange extends ListingsQuery {
+        private final IntColumn column;
+        private final int lower;
+        private final int upper;
+
+        IntRange(IntColumn column, int lower, int upper) {
+            this.column = column;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        @Override
+        BitSet matching(ListingsTable table, BitSet candidates) {
+            if (column == IntColumn.PRICE && worthUsingIndex(estimate(table), candidates)) {
+                BitSet found = new BitSet(table.size());
+                // The bits can be set straight from the index, in price order...
+                table.priceIndex().setRowsInRange(lower, upper, -1, found);
+                found.and(candidates);
+                return found;
+            }
+            int[] values = column.of(table);
+            int size = table.size();
+            if (candidates.cardinality() == size) {
+                // Every row is a candidate, so go straight through the column, a word of the bitset at a time...
+                long[] words = new long[(size + 63) >>> 6];
+                for (int row = 0; row < size; row++) {
+                    int value = values[row];
+                    if (value >= lower && value <= upper) words[row >>> 6] |= 1L << row;
+                }
+                return BitSet.valueOf(words);
+            }
+            BitSet found = new BitSet(size);
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                int value = values[row];
+                if (value >= lower && value <= upper) found.set(row);
+            }
+            return found;
+        }
+
+        @Override
+        int estimate(ListingsTable table) {
+            if (column == IntColumn.PRICE) return table.priceIndex().countInRange(lower, upper, -1);
+            return table.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IntRange)) return false;
+            IntRange that = (IntRange) o;
+            return column == that.column && lower == that.lower && upper == that.upper;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(column, lower, upper);
+        }
+
+        @Override
+        public String toString() {
+            switch (column) {
+                case PRICE:
+                    return "prices from £" + lower + (upper == Integer.MAX_VALUE ? "" : " to £" + upper);
+                case MINIMUM_NIGHTS:
+                    return "minimum nights from " + lower + (upper == Integer.MAX_VALUE ? "" : " to " + upper);
+                case REVIEWS:
+                    return "at least " + lower + " reviews";
+                default:
+                    return "available";
+            }
+        }
+    }
+
+    /**
+     * Some boroughs or room types, which are found using the category index.
+     */
+    private static final class Category extends ListingsQuery {
+        private final boolean borough;
+        private final Set<String> names;
+
+        Category(boolean borough, String[] names) {
+            this.borough = borough;
+            // Sorted, so the same names in a different order make an equal query...
+            this.names = Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(names)));
+        }
+
+        @Override
+        BitSet matching(ListingsTable table, BitSet candidates) {
+            int[] codes = codes(table);
+            BitSet found = borough ? table.categoryIndex().rowsInBoroughs(codes) : table.categoryIndex().rowsWithRoomTypes(codes);
+            found.and(candidates);
+            return found;
+        }
+
+        @Override
+        int estimate(ListingsTable table) {
+            int count = 0;
+            for (int code : codes(table)) {
+                count += borough ? table.categoryIndex().countInBorough(code) : table.categoryIndex().countWithRoomType(code);
+            }
+            return count;
+        }
+
+        // The codes of the names that are in the table. Names that aren't can't match anything.
+        private int[] codes(ListingsTable table) {
+            int[] codes = new int[names.size()];
+            int count = 0;
+            for (String name : names) {
+                int code = borough ? table.getBoroughCode(name) : table.getRoomTypeCode(name);
+                if (code >= 0) codes[count++] = code;
+            }
+            return Arrays.copyOf(codes, count);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Category)) return false;
+            Category that = (Category) o;
+            return borough == that.borough && names.equals(that.names);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(borough, names);
+        }
+
+        @Override
+        public String toString() {
+            return (borough ? "in " : "") + String.join(" or ", names);
+        }
+    }
+
+    /**
+     * Turn the rows found by an index into a bitset, keeping only the candidates.
+     */
+    private static BitSet candidatesIn(int[] rows, BitSet candidates) {
+        BitSet found = new BitSet(candidates.size());
+        for (int row : rows) if (candidates.get(row)) found.set(row);
+        return found;
+    }
+
+    /**
+     * A box on the map, which can use the spatial index.
+     */
+    private static final class BoundingBox extends ListingsQuery {
+        private final double south;
+        private final double west;
+        private final double north;
+        private final double east;
+
+        BoundingBox(double south, double west, double north, double east) {
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+        }
+
+        @Override
+        BitSet matching(ListingsTable table, BitSet candidates) {
+            if (worthUsingIndex(estimate(table), candidates)) return candidatesIn(table.spatialIndex().rowsInBox(south, west, north, east), candidates);
+            double[] latitudes = table.latitudes();
+            double[] longitudes = table.longitudes();
+            BitSet found = new BitSet(table.size());
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                double latitude = latitudes[row], longitude = longitudes[row];
+                // Missing locations are -1, and aren't in any box...
+                if (latitude == -1 || longitude == -1) continue;
+                if (latitude >= south && latitude <= north && longitude >= west && longitude <= east) found.set(row);
+            }
+            return found;
+        }
+
+        @Override
+        int estimate(ListingsTable table) {
+            return table.spatialIndex().estimateInBox(south, west, north, east);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BoundingBox)) return false;
+            BoundingBox that = (BoundingBox) o;
+            return Double.compare(south, that.south) == 0 && Double.compare(west, that.west) == 0
+                    && Double.compare(north, that.north) == 0 && Double.compare(east, that.east) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(south, west, north, east);
+        }
+
+        @Override
+        public String toString() {
+            return "between latitudes " + south + " and " + north + " and longitudes " + west + " and " + east;
+        }
+    }
+
+    /**
+     * A circle on the map, which can use the spatial index.
+     */
+    private static final class Radius extends ListingsQuery {
+        private final double latitude;
+        private final double longitude;
+        private final double metres;
+
+        Radius(double latitude, double longitude, double metres) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.metres = metres;
+        }
+
+        @Override
+        BitSet matching(ListingsTable table, BitSet candidates) {
+            SpatialIndex index = table.spatialIndex();
+            if (worthUsingIndex(estimate(table), candidates)) return candidatesIn(index.rowsWithin(latitude, longitude, metres), candidates);
+            BitSet found = new BitSet(table.size());
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                if (index.isWithin(row, latitude, longitude, metres)) found.set(row);
+            }
+            return found;
+        }
+
+        @Override
+        int estimate(ListingsTable table) {
+            return table.spatialIndex().estimateWithin(latitude, longitude, metres);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Radius)) return false;
+            Radius that = (Radius) o;
+            return Double.compare(latitude, that.latitude) == 0 && Double.compare(longitude, that.longitude) == 0
+                    && Double.compare(metres, that.metres) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(latitude, longitude, metres);
+        }
+
+        @Override
+        public String toString() {
+            return "within " + metres + "m of " + latitude + ", " + longitude;
+        }
+    }
+
+    /**
+     * Queries combined with and, or or.
+     */
+    private static final class Combination extends ListingsQuery {
+        private final boolean and;
+        private final List<ListingsQuery> queries;
+
+        Combination(boolean and, List<ListingsQuery> queries) {
+            this.and = and;
+            this.queries = List.copyOf(queries);
+        }
+
+        @Override
+        BitSet matching(ListingsTable table, BitSet candidates) {
+            if (and) {
+                // Plan: the queries which could match the fewest rows go first, so the later ones have fewer rows to look at...
+                List<ListingsQuery> planned = new ArrayList<>(queries);
+                Map<ListingsQuery, Integer> estimates = new HashMap<>();
+                for (ListingsQuery query : planned) estimates.put(query, query.estimate(table));
+                planned.sort(Comparator.comparing(estimates::get));
+                BitSet found = candidates;
+                for (ListingsQuery query : planned) {
+                    // Nothing left, so there's no need to look at the rest...
+                    if (found.isEmpty()) break;
+                    found = query.matching(table, found);
+                }
+                return found == candidates ? (BitSet) candidates.clone() : found;
+            }
+            BitSet found = new BitSet(table.size());
+            BitSet left = candidates;
+            for (ListingsQuery query : queries) {
+                if (left.isEmpty()) break;
+                found.or(query.matching(table, left));
+                // Rows that already match don't need looking at again...
+                left = (BitSet) candidates.clone();
+                left.andNot(found);
+            }
+            return found;
+        }
+
+        @Override
+        int estimate(ListingsTable table) {
+            long count = and ? table.size() : 0;
+            for (ListingsQuery query : queries) {
+                if (and) count = Math.min(count, query.estimate(table));
+                else count += query.estimate(table);
+            }
+            return (int) Math.min(count, table.size());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Combination)) return false;
+            Combination that = (Combination) o;
+            return and == that.and && queries.equals(that.queries);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(and, queries);
+        }
+
+        @Override
+        public String toString() {
+            if (queries.isEmpty()) return and ? "everything" : "nothing";
+            StringJoiner joiner = new StringJoiner(and ? ", " : " or ", "(", ")");
+            for (ListingsQuery query : queries) joiner.add(query.toString());
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * The listings which don't match a query.
+     */
+    private static final class Not extends ListingsQuery {
+        private final ListingsQuery query;
+
+        Not(ListingsQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        BitSet matching(ListingsTable table, BitSet candidates) {
+            BitSet found = (BitSet) candidates.clone();
+            found.andNot(query.matching(table, candidates));
+            return found;
+        }
+
+        @Override
+        int estimate(ListingsTable table) {
+            return table.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Not && query.equals(((Not) o).query);
+        }
+
+        @Override
+        public int hashCode() {
+            return ~query.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "not " + query;
+        }
+    }
+}
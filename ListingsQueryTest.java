@@ -0,0 +1,176 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * The test class ListingsQueryTest.
+ * This builds random trees of AND, OR and NOT over every kind of condition, and checks that the rows each tree
+ * finds and its count per borough are the same as checking every listing one by one.
+ * The ranges are a mix of narrow ones (so the indexes get used) and wide ones (so the columns are scanned),
+ * and some listings have no location, so they should never be in a box or a circle.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class ListingsQueryTest
+{
+    private static final String[] BOROUGHS = {"Camden", "Hackney", "Westminster", "Walford", "Leytown"};
+    private static final String[] ROOM_TYPES = {"Entire home/apt", "Private room", "Shared room"};
+
+    private final List<AirbnbListing> listings = randomListings(3000);
+    private final ListingsTable table = ListingsTable.of(listings);
+
+    /**
+     * Test each kind of condition on its own.
+     */
+    @Test
+    public void conditionsSameAsScan() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) assertSameAsScan(randomCondition(random));
+    }
+
+    /**
+     * Test random trees of conditions.
+     */
+    @Test
+    public void treesSameAsScan() {
+        Random random = new Random(2);
+        for (int i = 0; i < 500; i++) assertSameAsScan(randomTree(random, 4));
+    }
+
+    /**
+     * Test AND and OR of nothing, which match everything and nothing.
+     */
+    @Test
+    public void emptyCombinations() {
+        assertSameAsScan(new Checked(ListingsQuery.and(), row -> true));
+        assertSameAsScan(new Checked(ListingsQuery.or(), row -> false));
+        assertSameAsScan(new Checked(ListingsQuery.not(ListingsQuery.or()), row -> true));
+    }
+
+    private void assertSameAsScan(Checked checked) {
+        List<Integer> wanted = new ArrayList<>();
+        int[] counts = new int[table.boroughNames().length];
+        for (int row = 0; row < table.size(); row++) {
+            if (!checked.predicate.test(row)) continue;
+            wanted.add(row);
+            counts[table.boroughs()[row]]++;
+        }
+        int[] rows = checked.query.rows(table);
+        assertEquals(checked.query + " should find the same rows as a scan", wanted.toString(), Arrays.toString(rows));
+        assertArrayEquals(checked.query + " should count the same as a scan", counts, checked.query.countPerBorough(table));
+    }
+
+    private Checked randomTree(Random random, int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) return randomCondition(random);
+        switch (random.nextInt(3)) {
+            case 0: {
+                Checked query = randomTree(random, depth - 1);
+                return new Checked(ListingsQuery.not(query.query), query.predicate.negate());
+            }
+            default: {
+                boolean and = random.nextBoolean();
+                List<ListingsQuery> queries = new ArrayList<>();
+                IntPredicate predicate = row -> and;
+                for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                    Checked query = randomTree(random, depth - 1);
+                    queries.add(query.query);
+                    predicate = and ? predicate.and(query.predicate) : predicate.or(query.predicate);
+                }
+                return new Checked(and ? ListingsQuery.and(queries) : ListingsQuery.or(queries.toArray(new ListingsQuery[0])), predicate);
+            }
+        }
+    }
+
+    private Checked randomCondition(Random random) {
+        switch (random.nextInt(8)) {
+            case 0: {
+                // Mostly narrow ranges, so the price index is worth using...
+                int lower = random.nextInt(600) - 10;
+                int upper = lower + (random.nextInt(4) == 0 ? random.nextInt(1000) : random.nextInt(5)) - (random.nextInt(10) == 0 ? 10 : 0);
+                return new Checked(ListingsQuery.priceBetween(lower, upper), row -> {
+                    int price = listings.get(row).getPrice();
+                    return price >= lower && price <= upper;
+                });
+            }
+            case 1: {
+                int lower = random.nextInt(10), upper = lower + random.nextInt(5);
+                return new Checked(ListingsQuery.minimumNightsBetween(lower, upper), row -> {
+                    int nights = listings.get(row).getMinimumNights();
+                    return nights >= lower && nights <= upper;
+                });
+            }
+            case 2: {
+                int reviews = random.nextInt(220);
+                return new Checked(ListingsQuery.reviewsAtLeast(reviews), row -> listings.get(row).getNumberOfReviews() >= reviews);
+            }
+            case 3:
+                return new Checked(ListingsQuery.available(), row -> listings.get(row).getAvailability365() >= 1);
+            case 4: {
+                // Sometimes a borough which no listing is in...
+                String[] boroughs = randomNames(random, random.nextInt(5) == 0 ? new String[] {"Nowhere", "Camden"} : BOROUGHS);
+                return new Checked(ListingsQuery.inBoroughs(boroughs), row -> Arrays.asList(boroughs).contains(listings.get(row).getNeighbourhood()));
+            }
+            case 5: {
+                String[] roomTypes = randomNames(random, ROOM_TYPES);
+                return new Checked(ListingsQuery.withRoomTypes(roomTypes), row -> Arrays.asList(roomTypes).contains(listings.get(row).getRoom_type()));
+            }
+            case 6: {
+                // Boxes of all sizes, some partly or wholly outside the listings...
+                double south = 50.9 + random.nextDouble() * 1.2, west = -0.1 + random.nextDouble() * 1.2;
+                double size = random.nextBoolean() ? random.nextDouble() * 0.05 : random.nextDouble();
+                double north = south + size, east = west + size;
+                return new Checked(ListingsQuery.within(south, west, north, east), row -> {
+                    AirbnbListing listing = listings.get(row);
+                    double latitude = listing.getLatitude(), longitude = listing.getLongitude();
+                    return latitude != -1 && longitude != -1 && latitude >= south && latitude <= north && longitude >= west && longitude <= east;
+                });
+            }
+            default: {
+                double latitude = 50.9 + random.nextDouble() * 1.2, longitude = -0.1 + random.nextDouble() * 1.2;
+                double metres = random.nextBoolean() ? random.nextDouble() * 2000 : random.nextDouble() * 50000;
+                return new Checked(ListingsQuery.withinDistance(latitude, longitude, metres),
+                        row -> table.spatialIndex().isWithin(row, latitude, longitude, metres));
+            }
+        }
+    }
+
+    private static String[] randomNames(Random random, String[] names) {
+        List<String> chosen = new ArrayList<>();
+        for (String name : names) if (random.nextInt(3) == 0) chosen.add(name);
+        if (chosen.isEmpty()) chosen.add(names[random.nextInt(names.length)]);
+        return chosen.toArray(new String[0]);
+    }
+
+    private static List<AirbnbListing> randomListings(int count) {
+        Random random = new Random(2020);
+        List<AirbnbListing> listings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // One in twenty listings has no location, like the loader gives when it is missing...
+            boolean located = random.nextInt(20) != 0;
+            listings.add(new AirbnbListing("l" + i, "Test " + i, "h" + i, "Host", BOROUGHS[random.nextInt(BOROUGHS.length)],
+                    located ? 51 + random.nextDouble() : -1, located ? random.nextDouble() : -1,
+                    ROOM_TYPES[random.nextInt(ROOM_TYPES.length)], random.nextInt(50) == 0 ? -1 : random.nextInt(600),
+                    random.nextInt(12), random.nextInt(200), "01/01/2020", random.nextInt(1000) / 100.0, 1, random.nextInt(366)));
+        }
+        return listings;
+    }
+
+    /**
+     * A query, and the same condition checked on one listing at a time.
+     */
+    private static final class Checked {
+        private final ListingsQuery query;
+        private final IntPredicate predicate;
+
+        Checked(ListingsQuery query, IntPredicate predicate) {
+            this.query = query;
+            this.predicate = predicate;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes snapshots of a {@link ListingsTable} in a compact binary format, so the csv file only needs
+ * to be parsed the first time the program is run. The snapshot remembers the size and modification time of the
+ * csv file it was made from, and is ignored if the csv file has changed since, or if it is damaged.
+ *
+ * The format (all numbers little endian) is a header:
+ *   magic "ABNBSNAP", format version (int), number of rows (int), csv size (long), csv modification time (long),
+ *   length of the rest of the file (long), CRC32C checksum of the rest of the file (long)
+ * followed by these sections, one after another:
+ *   the string dictionary: its length in bytes, the number of borough names and the number of room type names
+ *     (ints), then every borough name and then every room type name, each as a length (int) and its UTF-8 bytes
+ *   the int columns: boroughs, room types, prices, minimum nights, number of reviews, host listings counts
+ *     and availability, each as (rows) ints
+ *   the double columns: latitudes, longitudes and reviews per month, each as (rows) doubles
+ *   the text columns: ids, names, host ids, host names and last reviews, each as the length of its data (int),
+ *     then (rows + 1) offsets (ints), then the UTF-8 data
+ *
+ * The columns are memory mapped and copied straight into the arrays of the table, so loading a snapshot is
+ * mostly just copying memory. Nothing is mapped until the header, checksum and dictionary have been checked though,
+ * as a rejected snapshot is replaced straight away, and on Windows a file can't be replaced while it is mapped.
+ *
+ * The borough dictionary has to start with the boroughs of the default {@link BoroughCatalog}, since the codes
+ * are the catalog ids. If the catalog has changed since the snapshot was written, the snapshot is ignored too.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public final class ListingsSnapshot {
+    // The first bytes of every snapshot file.
+    private static final byte[] MAGIC = "ABNBSNAP".getBytes(StandardCharsets.US_ASCII);
+    // Change this whenever the format changes, so old snapshots are rebuilt.
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8 + 4 + 4 + 8 + 8 + 8 + 8;
+    // The most that is read at once when calculating the checksum.
+    private static final int CHECKSUM_WINDOW = 1 << 20;
+
+    // There should be no instances of this class.
+    private ListingsSnapshot() {}
+
+    /**
+     * Get where the snapshot for a csv file is kept, which is next to the csv file.
+     *
+     * @param csvFile The csv file.
+     * @return The location of the snapshot of the csv file.
+     */
+    public static Path snapshotFile(Path csvFile) {
+        return csvFile.resolveSibling(csvFile.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Read the snapshot of a csv file, if there is an up to date one.
+     *
+     * @param csvFile The csv file that the snapshot was made from.
+     * @return The table in the snapshot, or null if there is no snapshot, the csv file has changed since
+     * it was made, or it couldn't be read.
+     */
+    public static ListingsTable read(Path csvFile) {
+        Path snapshotFile = snapshotFile(csvFile);
+        if (!Files.isReadable(snapshotFile)) return null;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return null;
+            ByteBuffer header = readAt(channel, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) return null;
+            int rows = header.getInt();
+            // If the csv file has changed, this snapshot is out of date...
+            if (header.getLong() != Files.size(csvFile)) return null;
+            if (header.getLong() != Files.getLastModifiedTime(csvFile).toMillis()) return null;
+            long length = header.getLong();
+            long checksum = header.getLong();
+            if (channel.size() != HEADER_SIZE + length || checksum(channel, HEADER_SIZE, length) != checksum) return null;
+            // This is null if the snapshot was made with different boroughs...
+            return new Reader(channel, rows).read();
+        } catch (IOException | RuntimeException e) {
+            // A damaged snapshot just means we parse the csv file again.
+            System.out.println("Couldn't read the snapshot " + snapshotFile + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a snapshot of a table, which was loaded from a csv file.
+     * The snapshot is written to a temporary file first, so a half written snapshot is never read.
+     *
+     * The size and modification time must be the ones from before the csv file was parsed. If the file was
+     * changed while it was being parsed, the snapshot then doesn't match it, and it is parsed again next time.
+     *
+     * @param table The table loaded from the csv file.
+     * @param csvFile The csv file the table was loaded from.
+     * @param csvSize The size of the csv file, from before it was parsed.
+     * @param csvModified The modification time of the csv file in milliseconds, from before it was parsed.
+     * @throws IOException If the snapshot couldn't be written.
+     */
+    public static void write(ListingsTable table, Path csvFile, long csvSize, long csvModified) throws IOException {
+        Path snapshotFile = snapshotFile(csvFile);
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Leave space for the header, which is written last once we know the checksum.
+            channel.position(HEADER_SIZE);
+            writeDictionary(channel, table.boroughNames(), table.roomTypeNames());
+            for (int[] column : intColumns(table)) writeInts(channel, column, table.size());
+            for (double[] column : doubleColumns(table)) writeDoubles(channel, column, table.size());
+            for (TextColumn column : textColumns(table)) writeText(channel, column);
+            long length = channel.position() - HEADER_SIZE;
+
+            ByteBuffer header = buffer(HEADER_SIZE);
+            header.put(MAGIC).putInt(VERSION).putInt(table.size()).putLong(csvSize).putLong(csvModified)
+                    .putLong(length).putLong(checksum(channel, HEADER_SIZE, length));
+            header.flip();
+            channel.write(header, 0);
+        }
+        try {
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Private helper method.
+     * The int columns of a table, in the order they are stored.
+     */
+    private static int[][] intColumns(ListingsTable table) {
+        return new int[][] {table.boroughs(), table.roomTypes(), table.prices(), table.minimumNights(),
+                table.numberOfReviews(), table.hostListingsCounts(), table.availability365()};
+    }
+
+    /**
+     * Private helper method.
+     * The double columns of a table, in the order they are stored.
+     */
+    private static double[][] doubleColumns(ListingsTable table) {
+        return new double[][] {table.latitudes(), table.longitudes(), table.reviewsPerMonth()};
+    }
+
+    /**
+     * Private helper method.
+     * The text columns of a table, in the order they are stored.
+     */
+    private static TextColumn[] textColumns(ListingsTable table) {
+        return new TextColumn[] {table.ids(), table.names(), table.hostIds(), table.hostNames(), table.lastReviews()};
+    }
+
+    private static void writeDictionary(FileChannel channel, String[] boroughNames, String[] roomTypeNames) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        int size = 12;
+        for (String name : boroughNames) names.add(name.getBytes(StandardCharsets.UTF_8));
+        for (String name : roomTypeNames) names.add(name.getBytes(StandardCharsets.UTF_8));
+        for (byte[] name : names) size += 4 + name.length;
+        ByteBuffer buffer = buffer(size);
+        buffer.putInt(size - 4).putInt(boroughNames.length).putInt(roomTypeNames.length);
+        for (byte[] name : names) buffer.putInt(name.length).put(name);
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    private static void writeInts(FileChannel channel, int[] column, int length) throws IOException {
+        // Written in blocks, so we don't need a second copy of a huge column in memory.
+        int block = 1 << 16;
+        ByteBuffer buffer = buffer(block * 4);
+        for (int start = 0; start < length; start += block) {
+            int count = Math.min(block, length - start);
+            buffer.clear();
+            buffer.asIntBuffer().put(column, start, count);
+            buffer.limit(count * 4);
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeDoubles(FileChannel channel, double[] column, int length) throws IOException {
+        int block = 1 << 15;
+        ByteBuffer buffer = buffer(block * 8);
+        for (int start = 0; start < length; start += block) {
+            int count = Math.min(block, length - start);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(column, start, count);
+            buffer.limit(count * 8);
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeText(FileChannel channel, TextColumn column) throws IOException {
+        ByteBuffer length = buffer(4);
+        length.putInt(column.dataLength()).flip();
+        writeFully(channel, length);
+        writeInts(channel, column.offsets(), column.size() + 1);
+        writeFully(channel, ByteBuffer.wrap(column.data(), 0, column.dataLength()));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Private helper method.
+     * Read part of a file into a buffer on the heap, without mapping it.
+     */
+    private static ByteBuffer readAt(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = buffer(size);
+        readFully(channel, position, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException("The snapshot is too short");
+        }
+    }
+
+    /**
+     * Private helper method.
+     * Calculate the checksum of part of a file.
+     */
+    private static long checksum(FileChannel channel, long position, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        // A direct buffer, so the bytes aren't copied again on the way in...
+        ByteBuffer window = ByteBuffer.allocateDirect(CHECKSUM_WINDOW);
+        for (long done = 0; done < length; done += window.limit()) {
+            window.clear().limit((int) Math.min(CHECKSUM_WINDOW, length - done));
+            readFully(channel, position + done, window);
+            window.flip();
+            crc.update(window);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the sections of a snapshot, one after another.
+     */
+    private static class Reader {
+        private final FileChannel channel;
+        private final int rows;
+        private long position = HEADER_SIZE;
+
+        private Reader(FileChannel channel, int rows) {
+            this.channel = channel;
+            this.rows = rows;
+        }
+
+        private ListingsTable read() throws IOException {
+            // The dictionary is read rather than mapped, as the snapshot might be rejected because of it.
+            int dictionaryLength = readAt(channel, position, 4).getInt();
+            ByteBuffer dictionary = readAt(channel, position + 4, dictionaryLength);
+            position += 4 + dictionaryLength;
+            String[] boroughNames = new String[dictionary.getInt()];
+            String[] roomTypeNames = new String[dictionary.getInt()];
+            for (int i = 0; i < boroughNames.length; i++) boroughNames[i] = readString(dictionary);
+            for (int i = 0; i < roomTypeNames.length; i++) roomTypeNames[i] = readString(dictionary);
+            // The codes only match the ids if the boroughs of the catalog come first, in the same order...
+            BoroughCatalog catalog = BoroughCatalog.getDefault();
+            if (boroughNames.length < catalog.size()) return null;
+            for (int id = 0; id < catalog.size(); id++) if (!boroughNames[id].equals(catalog.getName(id))) return null;
+
+            int[][] ints = new int[7][];
+            for (int i = 0; i < ints.length; i++) ints[i] = readInts(rows);
+            double[][] doubles = new double[3][];
+            for (int i = 0; i < doubles.length; i++) doubles[i] = readDoubles(rows);
+            TextColumn[] text = new TextColumn[5];
+            for (int i = 0; i < text.length; i++) text[i] = readText();
+
+            return new ListingsTable(rows, text[0], text[1], text[2], text[3], text[4],
+                    ints[0], boroughNames, catalog, ints[1], roomTypeNames, doubles[0], doubles[1],
+                    ints[2], ints[3], ints[4], doubles[2], ints[5], ints[6]);
+        }
+
+        private ByteBuffer next(long size) throws IOException {
+            ByteBuffer buffer = map(channel, position, size);
+            position += size;
+            return buffer;
+        }
+
+        private String readString(ByteBuffer dictionary) {
+            byte[] bytes = new byte[dictionary.getInt()];
+            dictionary.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int[] readInts(int count) throws IOException {
+            int[] column = new int[count];
+            next(count * 4L).asIntBuffer().get(column);
+            return column;
+        }
+
+        private double[] readDoubles(int count) throws IOException {
+            double[] column = new double[count];
+            next(count * 8L).asDoubleBuffer().get(column);
+            return column;
+        }
+
+        private TextColumn readText() throws IOException {
+            int length = next(4).getInt();
+            int[] offsets = readInts(rows + 1);
+            byte[] data = new byte[length];
+            next(length).get(data);
+            return new TextColumn(data, offsets, rows);
+        }
+    }
+}
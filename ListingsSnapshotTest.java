@@ -0,0 +1,171 @@
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The test class ListingsSnapshotTest.
+ * This checks that a snapshot reads back exactly the table that was written, and that it is ignored
+ * whenever it can't be trusted: the csv file has changed size or modification time, the snapshot is damaged,
+ * or its boroughs don't start with the boroughs of the catalog.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class ListingsSnapshotTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path csvFile;
+    private ListingsTable table;
+
+    /**
+     * Make a csv file for the snapshots to belong to, and a table of random listings to write.
+     * The contents of the csv file don't matter, only its size and modification time.
+     */
+    @Before
+    public void setUp() throws IOException {
+        csvFile = folder.getRoot().toPath().resolve("listings.csv");
+        Files.write(csvFile, "id,name\n1,Test\n".getBytes(StandardCharsets.UTF_8));
+        table = ListingsTable.of(randomListings(500, BoroughCatalog.getDefault().getNames()));
+    }
+
+    /**
+     * Test that the snapshot gives back the same listings and dictionaries as the table written.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        write(table);
+        ListingsTable read = ListingsSnapshot.read(csvFile);
+        assertNotNull("An up to date snapshot should be read", read);
+        assertEquals("The snapshot should have every row", table.size(), read.size());
+        assertArrayEquals("The boroughs should have the same codes", table.boroughNames(), read.boroughNames());
+        assertArrayEquals("The room types should have the same codes", table.roomTypeNames(), read.roomTypeNames());
+        assertSame("The snapshot should use the default catalog", BoroughCatalog.getDefault(), read.getCatalog());
+        for (int row = 0; row < table.size(); row++) {
+            assertEquals("Row " + row + " should be the same", table.getListing(row).toString(), read.getListing(row).toString());
+        }
+    }
+
+    /**
+     * Test that a snapshot is ignored once the csv file is a different size.
+     */
+    @Test
+    public void ignoredWhenCsvSizeChanges() throws IOException {
+        write(table);
+        FileTime modified = Files.getLastModifiedTime(csvFile);
+        Files.write(csvFile, "2,Another\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(csvFile, modified);
+        assertNull("The csv file has changed, so the snapshot is out of date", ListingsSnapshot.read(csvFile));
+    }
+
+    /**
+     * Test that a snapshot is ignored once the csv file has a different modification time.
+     */
+    @Test
+    public void ignoredWhenCsvModifiedTimeChanges() throws IOException {
+        write(table);
+        Files.setLastModifiedTime(csvFile, FileTime.fromMillis(Files.getLastModifiedTime(csvFile).toMillis() + 5000));
+        assertNull("The csv file has changed, so the snapshot is out of date", ListingsSnapshot.read(csvFile));
+    }
+
+    /**
+     * Test that the snapshot is matched against the csv file as it was before it was parsed, not as it is when
+     * the snapshot is written. If the file changed while it was parsed, the snapshot mustn't be trusted.
+     */
+    @Test
+    public void ignoredWhenCsvChangedWhileParsing() throws IOException {
+        long sizeBeforeParsing = Files.size(csvFile);
+        long modifiedBeforeParsing = Files.getLastModifiedTime(csvFile).toMillis();
+        Files.write(csvFile, "2,Another\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        ListingsSnapshot.write(table, csvFile, sizeBeforeParsing, modifiedBeforeParsing);
+        assertNull("The snapshot was made from the old csv file, so it is out of date", ListingsSnapshot.read(csvFile));
+    }
+
+    /**
+     * Test that a snapshot which was rejected can be replaced straight away, like the loader does.
+     * (On Windows, a file can't be replaced while any of it is still mapped.)
+     */
+    @Test
+    public void replacedAfterBeingRejected() throws IOException {
+        write(table);
+        Files.setLastModifiedTime(csvFile, FileTime.fromMillis(Files.getLastModifiedTime(csvFile).toMillis() + 5000));
+        assertNull(ListingsSnapshot.read(csvFile));
+        write(table);
+        ListingsTable read = ListingsSnapshot.read(csvFile);
+        assertNotNull("The new snapshot should replace the rejected one", read);
+        assertEquals(table.size(), read.size());
+    }
+
+    /**
+     * Test that a damaged snapshot fails the checksum and is ignored.
+     */
+    @Test
+    public void ignoredWhenChecksumIsWrong() throws IOException {
+        write(table);
+        Path snapshotFile = ListingsSnapshot.snapshotFile(csvFile);
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Flip a byte in the middle of the columns...
+            long position = channel.size() / 2;
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) ~buffer.get(0));
+            buffer.rewind();
+            channel.write(buffer, position);
+        }
+        assertNull("A damaged snapshot should be ignored", ListingsSnapshot.read(csvFile));
+    }
+
+    /**
+     * Test that a snapshot whose borough codes aren't the ids of the catalog is ignored.
+     */
+    @Test
+    public void ignoredWhenBoroughsDontMatchCatalog() throws IOException {
+        // Without a catalog, the boroughs get their codes in the order they are first seen...
+        String[] boroughs = BoroughCatalog.getDefault().getNames();
+        List<String> reversed = new ArrayList<>(Arrays.asList(boroughs));
+        Collections.reverse(reversed);
+        ListingsTable.Builder builder = new ListingsTable.Builder(100, BoroughCatalog.EMPTY);
+        for (AirbnbListing listing : randomListings(100, reversed.toArray(new String[0]))) builder.add(listing);
+        ListingsTable uncatalogued = builder.build();
+        assertNotEquals("The codes should be in a different order", boroughs[0], uncatalogued.boroughNames()[0]);
+
+        write(uncatalogued);
+        assertNull("The borough codes don't match the catalog, so the snapshot can't be used", ListingsSnapshot.read(csvFile));
+    }
+
+    private void write(ListingsTable table) throws IOException {
+        ListingsSnapshot.write(table, csvFile, Files.size(csvFile), Files.getLastModifiedTime(csvFile).toMillis());
+    }
+
+    private static List<AirbnbListing> randomListings(int count, String[] boroughs) {
+        Random random = new Random(2020);
+        String[] roomTypes = {"Entire home/apt", "Private room", "Shared room"};
+        List<AirbnbListing> listings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Go through the boroughs in order first, so they are all seen in that order...
+            String borough = i < boroughs.length ? boroughs[i] : boroughs[random.nextInt(boroughs.length)];
+            listings.add(new AirbnbListing("l" + i, "Test \"" + i + "\"", "h" + i, "Host " + random.nextInt(50), borough,
+                    51 + random.nextDouble(), random.nextDouble(), roomTypes[random.nextInt(roomTypes.length)], random.nextInt(500),
+                    1 + random.nextInt(10), random.nextInt(200), random.nextBoolean() ? "2019-07-01" : "",
+                    random.nextInt(1000) / 100.0, 1 + random.nextInt(5), random.nextInt(366)));
+        }
+        return listings;
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.*;
+
+/**
+ * Sorts listings by one of the columns shown in the listings window.
+ * This was part of {@link ListingsController}, but doesn't need JavaFX, so it can be used (and benchmarked) on its own.
+ *
+ * @author Skye Macdonald (k19015078) and Kevin Quah (k1921877)
+ * @version 2020-04-20
+ */
+public final class ListingsSorter {
+    // The names of the ways listings can be sorted, as shown in the listings window.
+    public static final String HOST_NAME = "Host Name";
+    public static final String PRICE = "Price per Night";
+    public static final String REVIEWS = "Number of Reviews";
+    public static final String MINIMUM_NIGHTS = "Minimum Number of Nights";
+    public static final List<String> SORT_OPTIONS = List.of(HOST_NAME, PRICE, REVIEWS, MINIMUM_NIGHTS);
+    // The sort index goes through every row of the table, so it is only used for at least 1/INDEX_FRACTION of them.
+    private static final int INDEX_FRACTION = 16;
+
+    private ListingsSorter() {
+    }
+
+    /**
+     * Sort some listings. The sort is stable, so listings with the same value stay in the same order.
+     *
+     * @param unsortedList The listings to sort.
+     * @param sortBy The name of the column to sort by, one of {@link #SORT_OPTIONS}.
+     * @param reverse Whether to sort in descending order instead.
+     * @return A new unmodifiable list of the listings, in order.
+     * @throws IllegalArgumentException If sortBy is not one of the sort options.
+     */
+    public static List<AirbnbListing> sortListings(Collection<AirbnbListing> unsortedList, String sortBy, boolean reverse) {
+        AirbnbListing[] listings = unsortedList.toArray(new AirbnbListing[0]);
+        // Get the value to sort by of each listing once, rather than calling the getter on every comparison...
+        int[] keys = new int[listings.length];
+        switch (sortBy){
+            case HOST_NAME:
+                String[] hostNames = new String[listings.length];
+                for (int i = 0; i < listings.length; i++) hostNames[i] = listings[i].getHost_name();
+                keys = rank(hostNames);
+                break;
+            case PRICE:
+                for (int i = 0; i < listings.length; i++) keys[i] = listings[i].getPrice();
+                break;
+            case REVIEWS:
+                for (int i = 0; i < listings.length; i++) keys[i] = listings[i].getNumberOfReviews();
+                break;
+            case MINIMUM_NIGHTS:
+                for (int i = 0; i < listings.length; i++) keys[i] = listings[i].getMinimumNights();
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected sorting type");
+        }
+        int[] order = sortPositions(keys, reverse);
+        AirbnbListing[] sorted = new AirbnbListing[listings.length];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = listings[order[i]];
+        // The array isn't used anywhere else, so it can be wrapped instead of copied.
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    /**
+     * Sort some rows of a table, without making {@link AirbnbListing} objects for them.
+     * The sort is stable like {@link #sortListings}, so it gives the rows in the same order that would give the listings.
+     *
+     * @param table The table holding the listings.
+     * @param rows The ordinals of the rows to sort. This array is not changed.
+     * @param sortBy The name of the column to sort by, one of {@link #SORT_OPTIONS}.
+     * @param reverse Whether to sort in descending order instead.
+     * @return A new array of the ordinals, in order.
+     * @throws IllegalArgumentException If sortBy is not one of the sort options.
+     */
+    public static int[] sortRows(ListingsTable table, int[] rows, String sortBy, boolean reverse) {
+        // If the rows are in ordinal order, and there are enough of them, the sort index already has them in order...
+        if (rows.length * INDEX_FRACTION >= table.size() && isAscending(rows)) return table.sortIndex().sortedRows(rows, sortBy, reverse);
+
+        // Otherwise look up the value of each row once, and sort them as numbers...
+        int[] keys = new int[rows.length];
+        if (sortBy.equals(HOST_NAME)) {
+            String[] hostNames = new String[rows.length];
+            for (int i = 0; i < rows.length; i++) hostNames[i] = table.getHostName(rows[i]);
+            keys = rank(hostNames);
+        } else {
+            int[] column = intColumn(table, sortBy);
+            for (int i = 0; i < rows.length; i++) keys[i] = column[rows[i]];
+        }
+        int[] order = sortPositions(keys, reverse);
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) sorted[i] = rows[order[i]];
+        return sorted;
+    }
+
+    /**
+     * Get the positions of the keys in sorted order. Equal keys stay in the order they were in, even when reversed.
+     * Each key goes in the top half of a long with its position in the bottom half, so sorting the longs
+     * (on all the cores, for big arrays) sorts the keys without any comparator or boxing.
+     */
+    static int[] sortPositions(int[] keys, boolean reverse) {
+        long[] packed = new long[keys.length];
+        for (int position = 0; position < keys.length; position++) {
+            // ~key is in the opposite order to key, and can't overflow like -key can.
+            int key = reverse ? ~keys[position] : keys[position];
+            packed[position] = ((long) key << 32) | position;
+        }
+        Arrays.parallelSort(packed);
+        int[] order = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) order[i] = (int) packed[i];
+        return order;
+    }
+
+    /**
+     * Replace each string with its position in alphabetical order among the different strings, so they can be
+     * sorted as numbers. Equal strings get the same number. Lots of hosts share a name, so there are usually far
+     * fewer different strings to sort than strings.
+     */
+    static int[] rank(String[] values) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        int[] ranks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Integer id = ids.get(values[i]);
+            if (id == null) {
+                id = distinct.size();
+                ids.put(values[i], id);
+                distinct.add(values[i]);
+            }
+            ranks[i] = id;
+        }
+        // Sort the different strings, then swap each id for its position...
+        String[] sorted = distinct.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int[] idRanks = new int[sorted.length];
+        for (int rank = 0; rank < sorted.length; rank++) idRanks[ids.get(sorted[rank])] = rank;
+        for (int i = 0; i < ranks.length; i++) ranks[i] = idRanks[ranks[i]];
+        return ranks;
+    }
+
+    private static boolean isAscending(int[] rows) {
+        for (int i = 1; i < rows.length; i++) if (rows[i - 1] >= rows[i]) return false;
+        return true;
+    }
+
+    /**
+     * Get the column of the table to sort by, for the sort options that are numbers.
+     */
+    static int[] intColumn(ListingsTable table, String sortBy) {
+        switch (sortBy){
+            case PRICE:
+                return table.prices();
+            case REVIEWS:
+                return table.numberOfReviews();
+            case MINIMUM_NIGHTS:
+                return table.minimumNights();
+            default:
+                throw new IllegalArgumentException("Unexpected sorting type");
+        }
+    }
+}
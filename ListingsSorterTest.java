@@ -0,0 +1,136 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * The test class ListingsSorterTest.
+ * This checks that every way of sorting (the packed long sort of the listings or rows, and the sort index)
+ * gives exactly the same order as the stable comparator sort the listings window used to do.
+ * There are lots of ties, so the order of equal values is checked too, both ascending and reversed.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class ListingsSorterTest
+{
+    // Host names with lots of repeats, different cases, accents, and characters outside the basic plane.
+    private static final String[] HOST_NAMES = {"Alex", "alex", "Sam", "", "Zoë", "Zoe", "Émile", "Ａnna", "😀 Jo", "Sam "};
+    // Numbers which sort awkwardly, as well as a small range so there are lots of ties.
+    private static final int[] AWKWARD_NUMBERS = {Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0, 1};
+
+    private final List<AirbnbListing> listings = randomListings(2000);
+    private final ListingsTable table = ListingsTable.of(listings);
+
+    /**
+     * Test sorting the listings themselves.
+     */
+    @Test
+    public void sortListingsSameAsComparator() {
+        for (String sortBy : ListingsSorter.SORT_OPTIONS) {
+            for (boolean reverse : new boolean[] {false, true}) {
+                assertEquals(sortBy + (reverse ? " reversed" : ""), ids(comparatorSort(listings, sortBy, reverse)),
+                        ids(ListingsSorter.sortListings(listings, sortBy, reverse)));
+            }
+        }
+    }
+
+    /**
+     * Test sorting every row, and most of the rows, which uses the sort index.
+     */
+    @Test
+    public void sortRowsWithIndexSameAsComparator() {
+        int[] allRows = new int[table.size()];
+        for (int row = 0; row < allRows.length; row++) allRows[row] = row;
+        assertSortRowsSameAsComparator(allRows);
+        assertSortRowsSameAsComparator(randomRows(new Random(1), 0.5, false));
+    }
+
+    /**
+     * Test sorting a few rows, and rows not in order, which sorts the values of those rows.
+     */
+    @Test
+    public void sortRowsWithoutIndexSameAsComparator() {
+        assertSortRowsSameAsComparator(randomRows(new Random(2), 0.01, false));
+        assertSortRowsSameAsComparator(randomRows(new Random(3), 0.5, true));
+        assertSortRowsSameAsComparator(new int[0]);
+    }
+
+    private void assertSortRowsSameAsComparator(int[] rows) {
+        List<AirbnbListing> unsorted = new ArrayList<>();
+        for (int row : rows) unsorted.add(listings.get(row));
+        for (String sortBy : ListingsSorter.SORT_OPTIONS) {
+            for (boolean reverse : new boolean[] {false, true}) {
+                List<String> sorted = new ArrayList<>();
+                for (int row : ListingsSorter.sortRows(table, rows, sortBy, reverse)) sorted.add(table.getListing(row).getId());
+                assertEquals(sortBy + (reverse ? " reversed" : "") + " of " + rows.length + " rows",
+                        ids(comparatorSort(unsorted, sortBy, reverse)), sorted);
+            }
+        }
+    }
+
+    /**
+     * The way the listings used to be sorted, with a stable sort using a comparator.
+     */
+    private static List<AirbnbListing> comparatorSort(List<AirbnbListing> unsorted, String sortBy, boolean reverse) {
+        Comparator<AirbnbListing> comparator;
+        switch (sortBy){
+            case ListingsSorter.HOST_NAME:
+                comparator = Comparator.comparing(AirbnbListing::getHost_name);
+                break;
+            case ListingsSorter.PRICE:
+                comparator = Comparator.comparingInt(AirbnbListing::getPrice);
+                break;
+            case ListingsSorter.REVIEWS:
+                comparator = Comparator.comparingInt(AirbnbListing::getNumberOfReviews);
+                break;
+            case ListingsSorter.MINIMUM_NIGHTS:
+                comparator = Comparator.comparingInt(AirbnbListing::getMinimumNights);
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected sorting type");
+        }
+        if (reverse) comparator = comparator.reversed();
+        return unsorted.stream().sorted(comparator).collect(Collectors.toList());
+    }
+
+    private static List<String> ids(List<AirbnbListing> listings) {
+        return listings.stream().map(AirbnbListing::getId).collect(Collectors.toList());
+    }
+
+    private int[] randomRows(Random random, double fraction, boolean shuffled) {
+        int[] rows = new int[table.size()];
+        int count = 0;
+        for (int row = 0; row < table.size(); row++) if (random.nextDouble() < fraction) rows[count++] = row;
+        rows = Arrays.copyOf(rows, count);
+        if (shuffled) {
+            for (int i = rows.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = rows[i];
+                rows[i] = rows[j];
+                rows[j] = swap;
+            }
+        }
+        return rows;
+    }
+
+    private static int randomNumber(Random random) {
+        return random.nextInt(10) == 0 ? AWKWARD_NUMBERS[random.nextInt(AWKWARD_NUMBERS.length)] : random.nextInt(20);
+    }
+
+    private static List<AirbnbListing> randomListings(int count) {
+        Random random = new Random(2020);
+        List<AirbnbListing> listings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            listings.add(new AirbnbListing("l" + i, "Test " + i, "h" + i, HOST_NAMES[random.nextInt(HOST_NAMES.length)], "Camden",
+                    51.5, -0.1, "Private room", randomNumber(random), randomNumber(random), randomNumber(random),
+                    "01/01/2020", 0.5, 1, 100));
+        }
+        return listings;
+    }
+}
@@ -0,0 +1,575 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class stores the loaded listings column by column, instead of as one {@link AirbnbListing} object per row.
+ * Every numeric column is a primitive array, the text columns are kept as UTF-8 bytes in a {@link TextColumn},
+ * and the borough and room type are dictionary encoded: each row stores a small integer code which indexes
+ * into a table of the distinct names. The boroughs of the table's {@link BoroughCatalog} always come first in
+ * the borough dictionary, so a borough's code is the same as its id in the catalog. Any neighbourhood which isn't
+ * in the catalog is given the next code when it is first seen.
+ *
+ * Rows are referred to by their ordinal (0 to size - 1). {@link AirbnbListing} objects are only created
+ * when something needs one, using {@link #getListing(int)} or the list views.
+ *
+ * The package-private column accessors return the arrays themselves so that the filtering and statistics code
+ * can loop over them quickly. They must never be modified!
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-27
+ */
+public final class ListingsTable {
+    // Gives each table a different token... This has to be before EMPTY, which uses it.
+    private static final AtomicLong NEXT_TOKEN = new AtomicLong();
+    // A table with no listings in it.
+    public static final ListingsTable EMPTY = new Builder(0).build();
+
+    // Identifies this table, so things about it can be compared without looking at the listings.
+    private final long token = NEXT_TOKEN.getAndIncrement();
+
+    private final int size;
+    // The text columns...
+    private final TextColumn ids;
+    private final TextColumn names;
+    private final TextColumn hostIds;
+    private final TextColumn hostNames;
+    private final TextColumn lastReviews;
+    // The dictionary encoded columns, with their dictionaries...
+    private final int[] boroughs;
+    private final String[] boroughNames;
+    private final BoroughCatalog catalog;
+    private final int[] roomTypes;
+    private final String[] roomTypeNames;
+    // The numeric columns...
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] prices;
+    private final int[] minimumNights;
+    private final int[] numberOfReviews;
+    private final double[] reviewsPerMonth;
+    private final int[] hostListingsCounts;
+    private final int[] availability365;
+    // Indexes built from the columns, made the first time they are needed.
+    private volatile PriceCube priceCube;
+    private volatile PriceIndex priceIndex;
+    private volatile CategoryIndex categoryIndex;
+    private volatile SortIndex sortIndex;
+    private volatile SpatialIndex spatialIndex;
+
+    /**
+     * Create a table from its columns. The arrays are used directly, not copied, and must all have
+     * at least size elements. This is used by the {@link Builder} and by code which reads tables from files.
+     * The borough names must start with the names of the catalog, in order.
+     */
+    ListingsTable(int size, TextColumn ids, TextColumn names, TextColumn hostIds, TextColumn hostNames,
+                  TextColumn lastReviews, int[] boroughs, String[] boroughNames, BoroughCatalog catalog, int[] roomTypes,
+                  String[] roomTypeNames, double[] latitudes, double[] longitudes, int[] prices,
+                  int[] minimumNights, int[] numberOfReviews, double[] reviewsPerMonth,
+                  int[] hostListingsCounts, int[] availability365) {
+        this.size = size;
+        this.ids = ids;
+        this.names = names;
+        this.hostIds = hostIds;
+        this.hostNames = hostNames;
+        this.lastReviews = lastReviews;
+        this.boroughs = boroughs;
+        this.boroughNames = boroughNames;
+        this.catalog = catalog;
+        this.roomTypes = roomTypes;
+        this.roomTypeNames = roomTypeNames;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.prices = prices;
+        this.minimumNights = minimumNights;
+        this.numberOfReviews = numberOfReviews;
+        this.reviewsPerMonth = reviewsPerMonth;
+        this.hostListingsCounts = hostListingsCounts;
+        this.availability365 = availability365;
+    }
+
+    /**
+     * Create a table holding the same listings as the collection given, in the same order.
+     *
+     * @param listings The listings to put in the table.
+     * @return A table of the listings.
+     */
+    public static ListingsTable of(Collection<AirbnbListing> listings) {
+        Builder builder = new Builder(listings.size());
+        for (AirbnbListing listing : listings) builder.add(listing);
+        return builder.build();
+    }
+
+    /**
+     * Join some tables together, one after another, into a single table.
+     *
+     * @param tables The tables to join together, in order.
+     * @return A table with the rows of all the tables given.
+     */
+    public static ListingsTable concat(List<ListingsTable> tables) {
+        int total = 0;
+        for (ListingsTable table : tables) total += table.size;
+        Builder builder = new Builder(total);
+        for (ListingsTable table : tables) builder.addAll(table);
+        return builder.build();
+    }
+
+    /**
+     * Get the number of listings (rows) in this table.
+     *
+     * @return The number of listings in this table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the token which identifies this table. Every table gets a different token, even if it holds the same listings,
+     * so comparing tokens is a quick way to check two things are about the same table.
+     *
+     * @return The token of this table.
+     */
+    public long getToken() {
+        return token;
+    }
+
+    /**
+     * Create an {@link AirbnbListing} holding the values of a row.
+     * A new object is created every time this is called.
+     *
+     * @param row The ordinal of the row.
+     * @return A listing with the values of the row.
+     */
+    public AirbnbListing getListing(int row) {
+        return new AirbnbListing(ids.get(row), names.get(row), hostIds.get(row), hostNames.get(row),
+                boroughNames[boroughs[row]], latitudes[row], longitudes[row], roomTypeNames[roomTypes[row]],
+                prices[row], minimumNights[row], numberOfReviews[row], lastReviews.get(row),
+                reviewsPerMonth[row], hostListingsCounts[row], availability365[row]);
+    }
+
+    /**
+     * Get a read only list of every listing in this table.
+     * The {@link AirbnbListing}s are created as they are accessed.
+     *
+     * @return A read only list view of every listing in this table.
+     */
+    public List<AirbnbListing> asList() {
+        return new RowView(null);
+    }
+
+    /**
+     * Get a read only list of some of the listings in this table.
+     * The {@link AirbnbListing}s are created as they are accessed.
+     *
+     * @param rows The ordinals of the rows in the view. This array is used directly, and must not be changed.
+     * @return A read only list view of the rows given.
+     */
+    public List<AirbnbListing> view(int[] rows) {
+        return new RowView(rows);
+    }
+
+    /**
+     * Get the name of the borough a row is in.
+     *
+     * @param row The ordinal of the row.
+     * @return The name of the borough.
+     */
+    public String getNeighbourhood(int row) {
+        return boroughNames[boroughs[row]];
+    }
+
+    /**
+     * Get the name of the host of a row.
+     *
+     * @param row The ordinal of the row.
+     * @return The name of the host.
+     */
+    public String getHostName(int row) {
+        return hostNames.get(row);
+    }
+
+    /**
+     * Get the code used for a borough in the borough column.
+     *
+     * @param borough The name of the borough.
+     * @return The code of the borough, or -1 if it isn't in the catalog and no listing is in it.
+     */
+    public int getBoroughCode(String borough) {
+        for (int code = 0; code < boroughNames.length; code++) {
+            if (boroughNames[code].equals(borough)) return code;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the code used for a room type in the room type column.
+     *
+     * @param roomType The room type, such as "Private room".
+     * @return The code of the room type, or -1 if no listing has that room type.
+     */
+    public int getRoomTypeCode(String roomType) {
+        for (int code = 0; code < roomTypeNames.length; code++) {
+            if (roomTypeNames[code].equals(roomType)) return code;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the catalog of boroughs this table was made with. The id of each borough in it
+     * is the same as its code in this table.
+     *
+     * @return The catalog of boroughs.
+     */
+    public BoroughCatalog getCatalog() {
+        return catalog;
+    }
+
+    // The raw columns, used by the filtering and statistics code. Do not modify these!
+    int[] boroughs() { return boroughs; }
+    String[] boroughNames() { return boroughNames; }
+    int[] roomTypes() { return roomTypes; }
+    String[] roomTypeNames() { return roomTypeNames; }
+    double[] latitudes() { return latitudes; }
+    double[] longitudes() { return longitudes; }
+    int[] prices() { return prices; }
+    int[] minimumNights() { return minimumNights; }
+    int[] numberOfReviews() { return numberOfReviews; }
+    double[] reviewsPerMonth() { return reviewsPerMonth; }
+    int[] hostListingsCounts() { return hostListingsCounts; }
+    int[] availability365() { return availability365; }
+    TextColumn ids() { return ids; }
+    TextColumn names() { return names; }
+    TextColumn hostIds() { return hostIds; }
+    TextColumn hostNames() { return hostNames; }
+    TextColumn lastReviews() { return lastReviews; }
+
+    /**
+     * Get the {@link PriceCube} of this table, building it the first time.
+     * Two threads might both build it at the same time, but they will build the same thing so it doesn't matter.
+     *
+     * @return The price cube for this table.
+     */
+    PriceCube priceCube() {
+        PriceCube cube = priceCube;
+        if (cube == null) priceCube = cube = new PriceCube(this);
+        return cube;
+    }
+
+    /**
+     * Get the {@link PriceIndex} of this table, building it the first time.
+     *
+     * @return The price index for this table.
+     */
+    PriceIndex priceIndex() {
+        PriceIndex index = priceIndex;
+        if (index == null) priceIndex = index = new PriceIndex(this);
+        return index;
+    }
+
+    /**
+     * Get the {@link CategoryIndex} of this table, building it the first time.
+     *
+     * @return The borough and room type index for this table.
+     */
+    CategoryIndex categoryIndex() {
+        CategoryIndex index = categoryIndex;
+        if (index == null) categoryIndex = index = new CategoryIndex(this);
+        return index;
+    }
+
+    /**
+     * Get the {@link SortIndex} of this table, creating it the first time.
+     *
+     * @return The sort index for this table.
+     */
+    SortIndex sortIndex() {
+        SortIndex index = sortIndex;
+        if (index == null) sortIndex = index = new SortIndex(this);
+        return index;
+    }
+
+    /**
+     * Get the {@link SpatialIndex} of this table, building it the first time.
+     *
+     * @return The spatial index for this table.
+     */
+    SpatialIndex spatialIndex() {
+        SpatialIndex index = spatialIndex;
+        if (index == null) spatialIndex = index = new SpatialIndex(this);
+        return index;
+    }
+
+    /**
+     * Build all of the indexes now, so that nothing has to wait for them later.
+     * This is done by the loader once all the listings are loaded.
+     */
+    void buildIndexes() {
+        priceCube();
+        priceIndex();
+        categoryIndex();
+        sortIndex().buildAll();
+        spatialIndex();
+    }
+
+    /**
+     * A read only list which creates the {@link AirbnbListing} for a row when it is accessed.
+     */
+    private class RowView extends AbstractList<AirbnbListing> implements RandomAccess {
+        // The rows in this view. null means every row of the table.
+        private final int[] rows;
+
+        private RowView(int[] rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public AirbnbListing get(int index) {
+            if (rows == null) {
+                Objects.checkIndex(index, size);
+                return getListing(index);
+            }
+            return getListing(rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? size : rows.length;
+        }
+    }
+
+    /**
+     * Builds a {@link ListingsTable} one row at a time.
+     */
+    public static final class Builder {
+        private int size = 0;
+        private final TextColumn.Builder ids;
+        private final TextColumn.Builder names;
+        private final TextColumn.Builder hostIds;
+        private final TextColumn.Builder hostNames;
+        private final TextColumn.Builder lastReviews;
+        private int[] boroughs;
+        private final List<String> boroughNames = new ArrayList<>();
+        private final Map<String, Integer> boroughCodes = new HashMap<>();
+        private final BoroughCatalog catalog;
+        private int[] roomTypes;
+        private final List<String> roomTypeNames = new ArrayList<>();
+        private final Map<String, Integer> roomTypeCodes = new HashMap<>();
+        private double[] latitudes;
+        private double[] longitudes;
+        private int[] prices;
+        private int[] minimumNights;
+        private int[] numberOfReviews;
+        private double[] reviewsPerMonth;
+        private int[] hostListingsCounts;
+        private int[] availability365;
+
+        /**
+         * Create a builder with room for roughly the number of rows given, using the default (London) boroughs.
+         *
+         * @param expectedRows The expected number of rows. This is only used for the starting capacity.
+         */
+        public Builder(int expectedRows) {
+            this(expectedRows, BoroughCatalog.getDefault());
+        }
+
+        /**
+         * Create a builder with room for roughly the number of rows given.
+         *
+         * @param expectedRows The expected number of rows. This is only used for the starting capacity.
+         * @param catalog The boroughs to give the first codes to.
+         */
+        public Builder(int expectedRows, BoroughCatalog catalog) {
+            this.catalog = catalog;
+            // The catalog's boroughs get their codes first, so the codes are the same as the ids...
+            for (int id = 0; id < catalog.size(); id++) encode(boroughCodes, boroughNames, catalog.getName(id));
+            int capacity = Math.max(16, expectedRows);
+            ids = new TextColumn.Builder(capacity);
+            names = new TextColumn.Builder(capacity);
+            hostIds = new TextColumn.Builder(capacity);
+            hostNames = new TextColumn.Builder(capacity);
+            lastReviews = new TextColumn.Builder(capacity);
+            boroughs = new int[capacity];
+            roomTypes = new int[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+            prices = new int[capacity];
+            minimumNights = new int[capacity];
+            numberOfReviews = new int[capacity];
+            reviewsPerMonth = new double[capacity];
+            hostListingsCounts = new int[capacity];
+            availability365 = new int[capacity];
+        }
+
+        /**
+         * Add a row to the table. The parameters are in the same order as the {@link AirbnbListing} constructor.
+         */
+        public void add(String id, String name, String hostId, String hostName, String neighbourhood,
+                        double latitude, double longitude, String roomType, int price, int minimumNights,
+                        int numberOfReviews, String lastReview, double reviewsPerMonth,
+                        int calculatedHostListingsCount, int availability365) {
+            ids.add(id);
+            names.add(name);
+            hostIds.add(hostId);
+            hostNames.add(hostName);
+            lastReviews.add(lastReview);
+            addNumbers(encode(boroughCodes, boroughNames, neighbourhood), latitude, longitude,
+                    encode(roomTypeCodes, roomTypeNames, roomType), price, minimumNights, numberOfReviews,
+                    reviewsPerMonth, calculatedHostListingsCount, availability365);
+        }
+
+        /**
+         * Add a row to the table, copying the values from a listing.
+         *
+         * @param listing The listing to add.
+         */
+        public void add(AirbnbListing listing) {
+            add(listing.getId(), listing.getName(), listing.getHost_id(), listing.getHost_name(),
+                    listing.getNeighbourhood(), listing.getLatitude(), listing.getLongitude(), listing.getRoom_type(),
+                    listing.getPrice(), listing.getMinimumNights(), listing.getNumberOfReviews(), listing.getLastReview(),
+                    listing.getReviewsPerMonth(), listing.getCalculatedHostListingsCount(), listing.getAvailability365());
+        }
+
+        /**
+         * Add a row where the text values are already encoded as UTF-8, and the borough and room type
+         * have already been turned into codes using {@link #boroughCode(String)} and {@link #roomTypeCode(String)}.
+         * This is used by the CSV parser so it doesn't need to make a String for every value.
+         *
+         * @param text The buffer holding the text values.
+         * @param starts Where each text value starts: id, name, host id, host name and last review, in that order.
+         * @param ends Where each text value ends, in the same order.
+         */
+        void addEncoded(byte[] text, int[] starts, int[] ends, int borough, double latitude, double longitude,
+                        int roomType, int price, int minimumNights, int numberOfReviews, double reviewsPerMonth,
+                        int calculatedHostListingsCount, int availability365) {
+            ids.add(text, starts[0], ends[0] - starts[0]);
+            names.add(text, starts[1], ends[1] - starts[1]);
+            hostIds.add(text, starts[2], ends[2] - starts[2]);
+            hostNames.add(text, starts[3], ends[3] - starts[3]);
+            lastReviews.add(text, starts[4], ends[4] - starts[4]);
+            addNumbers(borough, latitude, longitude, roomType, price, minimumNights, numberOfReviews,
+                    reviewsPerMonth, calculatedHostListingsCount, availability365);
+        }
+
+        /**
+         * Get the code this builder uses for a borough, adding it to the dictionary if it is new.
+         *
+         * @param borough The name of the borough.
+         * @return The code of the borough.
+         */
+        int boroughCode(String borough) {
+            return encode(boroughCodes, boroughNames, borough);
+        }
+
+        /**
+         * Get the code this builder uses for a room type, adding it to the dictionary if it is new.
+         *
+         * @param roomType The room type.
+         * @return The code of the room type.
+         */
+        int roomTypeCode(String roomType) {
+            return encode(roomTypeCodes, roomTypeNames, roomType);
+        }
+
+        /**
+         * Add every row of a table to the end of this one.
+         *
+         * @param table The table to copy the rows from.
+         */
+        public void addAll(ListingsTable table) {
+            ids.addAll(table.ids);
+            names.addAll(table.names);
+            hostIds.addAll(table.hostIds);
+            hostNames.addAll(table.hostNames);
+            lastReviews.addAll(table.lastReviews);
+            // The other table has its own dictionary codes, so work out what they are in this table...
+            int[] boroughMapping = new int[table.boroughNames.length];
+            for (int code = 0; code < boroughMapping.length; code++) boroughMapping[code] = encode(boroughCodes, boroughNames, table.boroughNames[code]);
+            int[] roomTypeMapping = new int[table.roomTypeNames.length];
+            for (int code = 0; code < roomTypeMapping.length; code++) roomTypeMapping[code] = encode(roomTypeCodes, roomTypeNames, table.roomTypeNames[code]);
+
+            for (int row = 0; row < table.size; row++) {
+                addNumbers(boroughMapping[table.boroughs[row]], table.latitudes[row], table.longitudes[row],
+                        roomTypeMapping[table.roomTypes[row]], table.prices[row], table.minimumNights[row],
+                        table.numberOfReviews[row], table.reviewsPerMonth[row], table.hostListingsCounts[row],
+                        table.availability365[row]);
+            }
+        }
+
+        /**
+         * Get the number of rows added so far.
+         *
+         * @return The number of rows added so far.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Create the table. The builder should not be used after this.
+         *
+         * @return The finished table.
+         */
+        public ListingsTable build() {
+            return new ListingsTable(size, ids.build(), names.build(), hostIds.build(), hostNames.build(),
+                    lastReviews.build(), Arrays.copyOf(boroughs, size), boroughNames.toArray(new String[0]), catalog,
+                    Arrays.copyOf(roomTypes, size), roomTypeNames.toArray(new String[0]),
+                    Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size), Arrays.copyOf(prices, size),
+                    Arrays.copyOf(minimumNights, size), Arrays.copyOf(numberOfReviews, size),
+                    Arrays.copyOf(reviewsPerMonth, size), Arrays.copyOf(hostListingsCounts, size),
+                    Arrays.copyOf(availability365, size));
+        }
+
+        /**
+         * Private helper method.
+         * Add the values of the non-text columns for a new row.
+         */
+        private void addNumbers(int borough, double latitude, double longitude, int roomType, int price,
+                                int minimumNights, int numberOfReviews, double reviewsPerMonth,
+                                int calculatedHostListingsCount, int availability365) {
+            if (size == prices.length) grow();
+            boroughs[size] = borough;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            roomTypes[size] = roomType;
+            prices[size] = price;
+            this.minimumNights[size] = minimumNights;
+            this.numberOfReviews[size] = numberOfReviews;
+            this.reviewsPerMonth[size] = reviewsPerMonth;
+            hostListingsCounts[size] = calculatedHostListingsCount;
+            this.availability365[size] = availability365;
+            size++;
+        }
+
+        /**
+         * Private helper method.
+         * Make all of the numeric columns bigger.
+         */
+        private void grow() {
+            int capacity = size + (size >> 1) + 16;
+            boroughs = Arrays.copyOf(boroughs, capacity);
+            roomTypes = Arrays.copyOf(roomTypes, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            minimumNights = Arrays.copyOf(minimumNights, capacity);
+            numberOfReviews = Arrays.copyOf(numberOfReviews, capacity);
+            reviewsPerMonth = Arrays.copyOf(reviewsPerMonth, capacity);
+            hostListingsCounts = Arrays.copyOf(hostListingsCounts, capacity);
+            availability365 = Arrays.copyOf(availability365, capacity);
+        }
+
+        /**
+         * Private helper method.
+         * Get the dictionary code of a value, adding it to the dictionary if it is new.
+         */
+        private static int encode(Map<String, Integer> codes, List<String> names, String value) {
+            if (value == null) value = "";
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = names.size();
+                codes.put(value, code);
+                names.add(value);
+            }
+            return code;
+        }
+    }
+}
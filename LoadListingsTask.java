@@ -0,0 +1,34 @@
+import javafx.concurrent.Task;
+
+/**
+ * A background task which loads the listings, so the GUI can be shown straight away instead of waiting.
+ * While it runs, the progress and message are updated, and the value is set to the listings loaded so far,
+ * so the panels can show what has been loaded. When it succeeds, the value is every listing.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-14
+ */
+public class LoadListingsTask extends Task<ListingsTable> {
+    @Override
+    protected ListingsTable call() {
+        updateMessage("Loading listings...");
+        ListingsTable listings = new AirbnbDataLoader().loadTable(new ListingsCsvParser.ProgressListener() {
+            @Override
+            public void progress(long bytesParsed, long totalBytes) {
+                updateProgress(bytesParsed, totalBytes);
+            }
+
+            @Override
+            public void partialResult(ListingsTable rows) {
+                updateValue(rows);
+                updateMessage("Loading listings... (" + rows.size() + " so far)");
+            }
+        });
+        // Build the indexes here too, so the first filter change doesn't have to wait for them...
+        updateMessage("Indexing listings...");
+        listings.buildIndexes();
+        updateProgress(1, 1);
+        updateMessage("Loaded " + listings.size() + " listings");
+        return listings;
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache which remembers a limited number of values, throwing away the least recently used ones when it gets full.
+ * It is limited both by the number of entries and by an estimate of the bytes the values use.
+ * All the methods are synchronized, so one cache can be shared between threads.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class LruCache<K, V> {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+    // A LinkedHashMap in access order keeps the least recently used entry first...
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, Long> weights = new LinkedHashMap<>();
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long rejected = 0;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maxEntries The most entries the cache can hold.
+     * @param maxBytes The most bytes (estimated by the weigher) the cache can hold.
+     * @param weigher Estimates the number of bytes used by a value.
+     */
+    public LruCache(int maxEntries, long maxBytes, ToLongFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get a value from the cache, counting a hit or a miss.
+     *
+     * @param key The key of the value.
+     * @return The value, or null if it isn't in the cache.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) misses++;
+        else hits++;
+        return value;
+    }
+
+    /**
+     * Check if there is a value for a key, without counting a hit or miss or making it the most recently used.
+     *
+     * @param key The key to look for.
+     * @return true if the cache has a value for the key.
+     */
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Put a value in the cache, making it the most recently used.
+     * This should also be called again if the value has grown, so that its size is estimated again.
+     * A value bigger than the whole cache can't be kept. Any old value for the key is still removed
+     * (it would be out of date), the other entries are left alone, and it is counted by {@link #getRejected}.
+     *
+     * @param key The key of the value.
+     * @param value The value.
+     * @return true if the value was kept, false if it was too big for the cache.
+     */
+    public synchronized boolean put(K key, V value) {
+        remove(key);
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxBytes) {
+            rejected++;
+            return false;
+        }
+        entries.put(key, value);
+        weights.put(key, weight);
+        bytes += weight;
+        // Throw away the least recently used entries until it fits...
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            K eldestKey = eldest.next().getKey();
+            eldest.remove();
+            bytes -= weights.remove(eldestKey);
+        }
+        return true;
+    }
+
+    /**
+     * Remove everything from the cache. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weights.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Get the number of entries in the cache.
+     *
+     * @return The number of entries in the cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the estimated number of bytes used by all the values in the cache.
+     *
+     * @return The estimated number of bytes in the cache.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of times {@link #get} found a value.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of times {@link #get} didn't find a value.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of values which were too big to put in the cache.
+     *
+     * @return The number of values not kept.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    private void remove(K key) {
+        Long weight = weights.remove(key);
+        if (weight == null) return;
+        entries.remove(key);
+        bytes -= weight;
+    }
+}
@@ -0,0 +1,115 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * The test class LruCacheTest.
+ * This checks that the cache throws away the least recently used entries first, keeps within both its
+ * entry and byte limits, estimates the size of a value again when it is put again, and counts hits and misses.
+ * The values are strings, weighed by their length.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class LruCacheTest
+{
+    /**
+     * Test that the least recently put entry goes first when there are too many entries.
+     */
+    @Test
+    public void evictsLeastRecentlyPut() {
+        LruCache<String, String> cache = new LruCache<>(3, 1000, String::length);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.put("d", "4");
+        assertEquals("The cache should only hold 3 entries", 3, cache.size());
+        assertFalse("The oldest entry should be thrown away", cache.contains("a"));
+        assertTrue("The newer entries should be kept", cache.contains("b") && cache.contains("c") && cache.contains("d"));
+    }
+
+    /**
+     * Test that getting an entry makes it the most recently used, but checking for it doesn't.
+     */
+    @Test
+    public void getMakesMostRecentlyUsed() {
+        LruCache<String, String> cache = new LruCache<>(3, 1000, String::length);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.contains("b");
+        cache.put("d", "4");
+        assertTrue("The entry which was got should be kept", cache.contains("a"));
+        assertFalse("Checking for an entry shouldn't keep it", cache.contains("b"));
+    }
+
+    /**
+     * Test that the least recently used entries are thrown away until the values fit in the byte limit.
+     */
+    @Test
+    public void keepsWithinByteLimit() {
+        LruCache<String, String> cache = new LruCache<>(100, 10, String::length);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        assertEquals("Both values fit", 8, cache.getBytes());
+        cache.put("c", "123456");
+        assertEquals("The oldest value should be thrown away to make room", 10, cache.getBytes());
+        assertFalse(cache.contains("a"));
+        assertTrue(cache.contains("b") && cache.contains("c"));
+    }
+
+    /**
+     * Test that putting a value again weighs it again, and can throw other entries away if it has grown.
+     */
+    @Test
+    public void putAgainWeighsAgain() {
+        StringBuilder growing = new StringBuilder("12");
+        LruCache<String, StringBuilder> cache = new LruCache<>(100, 10, StringBuilder::length);
+        cache.put("a", new StringBuilder("1234"));
+        cache.put("b", growing);
+        assertEquals(6, cache.getBytes());
+        growing.append("12345");
+        assertEquals("The cache doesn't know the value has grown until it is put again", 6, cache.getBytes());
+        cache.put("b", growing);
+        assertEquals("The grown value should be weighed again, and the other entry thrown away", 7, cache.getBytes());
+        assertFalse(cache.contains("a"));
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Test that a value bigger than the whole cache is rejected, without throwing the other entries away,
+     * and that any old value for its key is removed.
+     */
+    @Test
+    public void rejectsValueBiggerThanCache() {
+        LruCache<String, String> cache = new LruCache<>(100, 10, String::length);
+        assertTrue("A small value should be kept", cache.put("a", "1234"));
+        assertTrue(cache.put("b", "12"));
+        assertFalse("A value over the byte limit can't be kept", cache.put("b", "12345678901"));
+        assertEquals("The rejected value should be counted", 1, cache.getRejected());
+        assertFalse("The old value of the key is out of date, so it should be gone", cache.contains("b"));
+        assertTrue("The other entries should be left alone", cache.contains("a"));
+        assertEquals(4, cache.getBytes());
+    }
+
+    /**
+     * Test that hits and misses are counted by get, and not by contains, and are kept when the cache is cleared.
+     */
+    @Test
+    public void countsHitsAndMisses() {
+        LruCache<String, String> cache = new LruCache<>(100, 1000, String::length);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.contains("a");
+        cache.contains("b");
+        assertEquals("Two gets found a value", 2, cache.getHits());
+        assertEquals("One get didn't find a value", 1, cache.getMisses());
+        cache.clear();
+        assertEquals("Clearing empties the cache", 0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertEquals("Clearing keeps the hit count", 2, cache.getHits());
+        assertEquals("Clearing keeps the miss count", 1, cache.getMisses());
+    }
+}
@@ -1,31 +1,58 @@
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.ResourceBundle;
 import javafx.fxml.*;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Label;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.*;
 import javafx.scene.input.*;
 import javafx.scene.shape.Polygon;
 import javafx.stage.Stage;
 import javafx.scene.shape.Shape;
+import javafx.scene.shape.StrokeType;
 import javafx.scene.paint.Color;
 
 /**
  * JavaFX Map panel controller class.
  *
  * @author Daniel VC (K19012373), Skye Macdonald (k19015078) and Fatlir Topalli (K1921543) and Kevin Quah (K1921877)
- * @version 2020.03.28
+ * @version 2020.04.27
  */
-public class MapController implements Initializable
+public class MapController implements Initializable, RefreshableController
 {
+    // The heatmaps are counted one at a time, in the background...
+    private static final ExecutorService HEATMAP_EXECUTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Heatmap");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The colour of each heat, from none (0) to the most (255)...
+    private static final int[] HEAT_COLOURS = heatColours();
+    // The shape of every borough hexagon, and how far apart they are on the map...
+    private static final double[] HEXAGON_POINTS = {-30, -10, 0, 10, 30, -10, 30, -40, 0, -60, -30, -40};
+    private static final double COLUMN_WIDTH = 30;
+    private static final double ROW_HEIGHT = 50;
+
     @FXML private AnchorPane mapContainer;
+    @FXML private Canvas heatmapCanvas;
+    @FXML private ToggleButton heatmapToggle;
     
-    private ListingsFilter currentFilter = SharedData.listingsFilter.clone();
+    // The filter being shown, given to the controller by refresh.
+    private ListingsFilter currentFilter;
     
-    private Map<String, Integer> counts;
-    int highest;
+    // The borough hexagons, made once when the map is loaded...
+    private List<BoroughHexagon> boroughHexagons = Collections.emptyList();
+    // The heatmap being counted, if there is one...
+    private HeatmapTask heatmapTask;
     
     /**
      * Initialize JavaFX controller
@@ -33,46 +60,153 @@ public class MapController implements Initializable
     @Override
     public void initialize(URL url, ResourceBundle rb)
     {
-        counts = currentFilter.getCountOfPropertiesPerBorough();
-        highest = Collections.max(counts.values());
         // Wrapped in a try/catch block, because it's very easy for something to go wrong here, and this is the only way to get the stack trace to print...
         try {
-            // We start with getting all the things in the map panel...
-            mapContainer.lookupAll("*").stream()
-                    // Then filter it based the length of the node ID. We know that all boroughs have a node ID length of 4.
-                    .filter(node -> node.getId() != null && node.getId().length() == 4)
-                    // We only want to affect polygons...
-                    .filter(Polygon.class::isInstance).map(Polygon.class::cast)
-                    // Then attempt to set the borough colour on each hexagon...
-                    .forEach(this::setBoroughColour);
+            // Make a hexagon for each borough in the catalog, in its place on the map...
+            BoroughCatalog catalog = BoroughCatalog.getDefault();
+            boroughHexagons = new ArrayList<>(catalog.size());
+            for (int borough = 0; borough < catalog.size(); borough++) {
+                boroughHexagons.add(new BoroughHexagon(borough, catalog.getName(borough), makeHexagon(catalog, borough)));
+            }
         } catch (Exception e) {e.printStackTrace();}
     }
 
     /**
-     * Set the colour of a borough, based on how many listings it has compared to the highest amount in the filter.
+     * Make the hexagon of a borough, with its code on it, and add it to the map.
      * 
-     * @param boroughHexagon The borough to set the colour of.
+     * @param catalog The catalog with the borough in.
+     * @param borough The id of the borough.
+     * @return The hexagon, which handles the mouse.
      */
-    private void setBoroughColour(Shape boroughHexagon) {
-        String boroughName = boroughLabelToName(boroughHexagon.getId());
-        // Set the colour only if the ID of the shape is one of a borough...
-        if (boroughName != null) boroughHexagon.setFill(Color.color(
-                // Use a nice green colour...
-                0, 1, 0.5,
-                // We increase the opacity (up to 0.75 or 3/4) to represent how many properties in the borough there are compared to the borough with the highest number of properties...
-                (double) counts.getOrDefault(boroughName, 0) / highest * 3 / 4));
+    private Polygon makeHexagon(BoroughCatalog catalog, int borough)
+    {
+        Polygon polygon = new Polygon(HEXAGON_POINTS);
+        polygon.setId(catalog.getCode(borough));
+        polygon.setFill(Color.TRANSPARENT);
+        polygon.setStroke(Color.BLACK);
+        polygon.setStrokeType(StrokeType.INSIDE);
+        polygon.setOnMouseClicked(this::displayBoroughListings);
+        polygon.setOnMouseEntered(this::highlight);
+        polygon.setOnMouseExited(this::highlight);
+        polygon.setOnMousePressed(this::highlight);
+        polygon.setOnMouseReleased(this::highlight);
+
+        StackPane stackPane = new StackPane(new Label(catalog.getCode(borough)), polygon);
+        stackPane.setPrefSize(48, 38);
+        stackPane.setLayoutX(catalog.getColumn(borough) * COLUMN_WIDTH);
+        stackPane.setLayoutY(catalog.getRow(borough) * ROW_HEIGHT);
+        mapContainer.getChildren().add(stackPane);
+        return polygon;
     }
-    
+
     /**
-     * Gets borough name of button clicked...
+     * Show the counts of a different filter, by colouring the hexagons again.
+     * 
+     * @param filter The filter to show the counts of.
+     */
+    @Override
+    public void refresh(ListingsFilter filter)
+    {
+        currentFilter = filter;
+        // The counts are by borough code, which is the same as the id of the borough in the catalog...
+        int[] counts = currentFilter.getCountPerBorough();
+        // There might not be any listings yet if they are still loading...
+        int highest = 0;
+        for (int count : counts) highest = Math.max(highest, count);
+        // Work out the colour of each hexagon once, so hovering and clicking only have to put it back...
+        for (BoroughHexagon hexagon : boroughHexagons) {
+            hexagon.fill = Color.color(
+                    // Use a nice green colour...
+                    0, 1, 0.5,
+                    // We increase the opacity (up to 0.75 or 3/4) to represent how many properties in the borough there are compared to the borough with the highest number of properties...
+                    highest == 0 || hexagon.borough >= counts.length ? 0 : (double) counts[hexagon.borough] / highest * 3 / 4);
+            hexagon.polygon.setFill(hexagon.fill);
+        }
+        if (heatmapToggle.isSelected()) startHeatmap();
+    }
+
+    /**
+     * Switch between the borough hexagons and the heatmap of every listing in the filter.
      */
     @FXML
+    private void toggleHeatmap()
+    {
+        boolean showHeatmap = heatmapToggle.isSelected();
+        mapContainer.setVisible(!showHeatmap);
+        heatmapCanvas.setVisible(showHeatmap);
+        if (showHeatmap) startHeatmap();
+        else if (heatmapTask != null) heatmapTask.cancel();
+    }
+
+    /**
+     * Count the listings of the current filter for the heatmap in the background, and draw them when it's done.
+     * A heatmap that is still being counted for an older filter is cancelled.
+     */
+    private void startHeatmap()
+    {
+        if (currentFilter == null) return;
+        if (heatmapTask != null) heatmapTask.cancel();
+        HeatmapTask task = new HeatmapTask(currentFilter, (int) heatmapCanvas.getWidth(), (int) heatmapCanvas.getHeight());
+        heatmapTask = task;
+        task.setOnSucceeded(event -> {
+            // Only draw it if the filter hasn't changed since...
+            if (heatmapTask == task) drawHeatmap(task.getValue());
+        });
+        task.setOnFailed(event -> task.getException().printStackTrace());
+        HEATMAP_EXECUTOR.execute(task);
+    }
+
+    /**
+     * Draw a heatmap on the canvas. This goes through each pixel once, so it takes the same time
+     * however many listings were counted.
+     *
+     * @param grid The number of listings in each pixel.
+     */
+    private void drawHeatmap(DensityGrid grid)
+    {
+        int width = grid.getWidth(), height = grid.getHeight();
+        int[] pixels = new int[width * height];
+        // A few pixels have far more listings than the rest (central London!), so the heat goes up with the log of the count...
+        double scale = grid.getMaximum() == 0 ? 0 : (HEAT_COLOURS.length - 1) / Math.log1p(grid.getMaximum());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = HEAT_COLOURS[(int) (Math.log1p(grid.getCount(x, y)) * scale)];
+            }
+        }
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        heatmapCanvas.getGraphicsContext2D().clearRect(0, 0, heatmapCanvas.getWidth(), heatmapCanvas.getHeight());
+        heatmapCanvas.getGraphicsContext2D().drawImage(image, 0, 0);
+    }
+
+    /**
+     * Make the colours of the heatmap, going from see through, to green, to yellow, to red.
+     *
+     * @return The ARGB colour of each heat, from none to the most.
+     */
+    private static int[] heatColours()
+    {
+        int[] colours = new int[256];
+        for (int heat = 1; heat < colours.length; heat++) {
+            double fraction = (double) heat / (colours.length - 1);
+            // The same green as the hexagons, turning red, and getting less see through as it gets hotter...
+            Color colour = Color.hsb(150 * (1 - fraction), 1, 1, 0.25 + 0.75 * fraction);
+            colours[heat] = (int) Math.round(colour.getOpacity() * 255) << 24
+                    | (int) Math.round(colour.getRed() * 255) << 16
+                    | (int) Math.round(colour.getGreen() * 255) << 8
+                    | (int) Math.round(colour.getBlue() * 255);
+        }
+        return colours;
+    }
+
+    /**
+     * Gets borough name of button clicked...
+     */
     private void displayBoroughListings(MouseEvent event)
     {
-        String boroughLabel = event.toString().substring(event.toString().indexOf("id="),event.toString().indexOf(",")).substring(3);
-        //System.out.println("Borough name: " + boroughLabel);
-        
-        String boroughName = boroughLabelToName(boroughLabel);
+        // Each borough hexagon knows which borough it is, since the map was loaded...
+        BoroughHexagon hexagon = (BoroughHexagon) ((Shape) event.getSource()).getUserData();
+        String boroughName = hexagon != null ? hexagon.boroughName : null;
 
         //Should display property listings in the borough...
         // This part written by Skye Macdonald (k19015078)
@@ -82,10 +216,7 @@ public class MapController implements Initializable
             stage.setScene(new Scene(loader.load()));
             
             ListingsController controller = loader.getController();
-            ListingsFilter filter = currentFilter.clone();
-            if (boroughName != null) filter.setBoroughFilter(boroughName);
-            else filter.unsetBoroughFilter();;
-            controller.setFilter(filter);
+            controller.setFilter(boroughName != null ? currentFilter.withBorough(boroughName) : currentFilter.withoutBorough());
             
             stage.show();
         } catch (IOException e) {
@@ -93,132 +224,11 @@ public class MapController implements Initializable
         }
     }
 
-    /**
-     * Convert a borough label (from the map hexagons) to a name (used by the data and listings).
-     * 
-     * @param boroughLabel A borough label from the map hexagons
-     * @return A borough name used by the listings.
-     */
-    private static String boroughLabelToName(String boroughLabel) {
-        // Null check! If the label is null then there is obviously no name!
-        if (boroughLabel == null) return null;
-        
-        // Retrieve full borough name
-        // This part written by Kevin Quah (K1921877)
-        String boroughName;
-        switch (boroughLabel){
-            case "KING":
-                boroughName = "Kingston upon Thames";
-                break;
-            case "CROY":
-                boroughName = "Croydon";
-                break;
-            case "BROM":
-                boroughName = "Bromley";
-                break;
-            case "HOUN":
-                boroughName = "Hounslow";
-                break;
-            case "EALI":
-                boroughName = "Ealing";
-                break;
-            case "HAVE":
-                boroughName = "Havering";
-                break;
-            case "HILL":
-                boroughName = "Hillingdon";
-                break;
-            case "HRRW":
-                boroughName = "Harrow";
-                break;
-            case "BREN":
-                boroughName = "Brent";
-                break;
-            case "BARN":
-                boroughName = "Barnet";
-                break;
-            case "ENFI":
-                boroughName = "Enfield";
-                break;
-            case "WALT":
-                boroughName = "Waltham Forest";
-                break;
-            case "REDB":
-                boroughName = "Redbridge";
-                break;
-            case "SUTT":
-                boroughName = "Sutton";
-                break;
-            case "LAMB":
-                boroughName = "Lambeth";
-                break;
-            case "STHW":
-                boroughName = "Southwark";
-                break;
-            case "LEWS":
-                boroughName = "Lewisham";
-                break;
-            case "GWCH":
-                boroughName = "Greenwich";
-                break;
-            case "BEXL":
-                boroughName = "Bexley";
-                break;
-            case "RICH":
-                boroughName = "Richmond upon Thames";
-                break;
-            case "MERT":
-                boroughName = "Merton";
-                break;
-            case "WAND":
-                boroughName = "Wandsworth";
-                break;
-            case "HAMM":
-                boroughName = "Hammersmith and Fulham";
-                break;
-            case "KENS":
-                boroughName = "Kensington and Chelsea";
-                break;
-            case "CITY":
-                boroughName = "City of London";
-                break;
-            case "WSTM":
-                boroughName = "Westminster";
-                break;
-            case "CAMD":
-                boroughName = "Camden";
-                break;
-            case "TOWH":
-                boroughName = "Tower Hamlets";
-                break;
-            case "ISLI":
-                boroughName = "Islington";
-                break;
-            case "HACK":
-                boroughName = "Hackney";
-                break;
-            case "HRGY":
-                boroughName = "Haringey";
-                break;
-            case "NEWH":
-                boroughName = "Newham";
-                break;
-            case "BARK":
-                boroughName = "Barking and Dagenham";
-                break;
-            default:
-                boroughName = null;
-                break;
-        }
-        return boroughName;
-    }
-
     /**
      * Highlights boroughs in different ways according to the event type detected.
      * @author Fatlir Topalli (K1921543)
      * @param event Mouse Event detected. 
      */
-    @FXML
     private void highlight(MouseEvent event)
     {
         Shape borough = (Shape) event.getSource();
@@ -229,7 +239,7 @@ public class MapController implements Initializable
         else if(event.getEventType() == MouseEvent.MOUSE_EXITED)
         {
             borough.setStroke(Color.BLACK);
-            setBoroughColour(borough);
+            resetBoroughColour(borough);
         }
         else if(event.getEventType() == MouseEvent.MOUSE_PRESSED)
         {
@@ -237,8 +247,39 @@ public class MapController implements Initializable
         }
         else if(event.getEventType() == MouseEvent.MOUSE_RELEASED)
         {
-            setBoroughColour(borough);
+            resetBoroughColour(borough);
         }
         
     }
+
+    /**
+     * Put back the colour of a borough, as it was worked out for the current filter.
+     * 
+     * @param borough The borough hexagon to set the colour of.
+     */
+    private static void resetBoroughColour(Shape borough)
+    {
+        BoroughHexagon hexagon = (BoroughHexagon) borough.getUserData();
+        if (hexagon != null) borough.setFill(hexagon.fill);
+    }
+
+    /**
+     * A hexagon on the map, with the borough it stands for and its colour for the current filter.
+     * Each one is kept as the user data of its polygon, so the mouse handlers can find it straight away.
+     */
+    private static class BoroughHexagon
+    {
+        private final int borough;
+        private final String boroughName;
+        private final Polygon polygon;
+        private Color fill = Color.TRANSPARENT;
+
+        private BoroughHexagon(int borough, String boroughName, Polygon polygon)
+        {
+            this.borough = borough;
+            this.boroughName = boroughName;
+            this.polygon = polygon;
+            polygon.setUserData(this);
+        }
+    }
 }
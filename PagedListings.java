@@ -0,0 +1,110 @@
+import javafx.collections.ObservableListBase;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A read only list of some of the rows of a {@link ListingsTable}, for showing in a TableView.
+ * The list only holds the ordinals of the rows. The {@link AirbnbListing} objects are made a page at a time,
+ * when the table asks for a row on that page, and only a limited number of pages are kept. As the table
+ * only asks for the rows which are on the screen, a huge number of listings can be shown without making
+ * them all. The pages either side of the one being looked at are made in the background, so they are
+ * usually ready by the time the user scrolls to them.
+ *
+ * The list never changes. To show different rows (or the same rows in a different order), create a new one.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-18
+ */
+public class PagedListings extends ObservableListBase<AirbnbListing> {
+    // The number of listings made at once.
+    static final int PAGE_SIZE = 256;
+    // The number of pages kept. With the page size, this is a few thousand listings at most.
+    private static final int MAXIMUM_PAGES = 32;
+    // Makes the pages in the background. Only one thread is needed, as pages are quick to make.
+    private static final ExecutorService PAGER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Listings pager");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ListingsTable listings;
+    private final int[] rows;
+    // The pages that have been made recently, by page number.
+    private final LruCache<Integer, AirbnbListing[]> pages = new LruCache<>(MAXIMUM_PAGES, Long.MAX_VALUE, page -> page.length);
+    // The pages that are being made in the background, so they aren't asked for twice.
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a list of some of the rows in a table.
+     *
+     * @param listings The table holding the listings.
+     * @param rows The ordinals of the rows, in the order they should be in the list. This is not copied, so don't change it!
+     */
+    public PagedListings(ListingsTable listings, int[] rows) {
+        this.listings = listings;
+        this.rows = rows;
+    }
+
+    /**
+     * Get the table holding the listings.
+     *
+     * @return The table the rows are from.
+     */
+    public ListingsTable getTable() {
+        return listings;
+    }
+
+    /**
+     * Get the ordinals of the rows in this list, in order.
+     *
+     * @return The ordinals of the rows. This array is shared, so it must not be changed!
+     */
+    public int[] getRows() {
+        return rows;
+    }
+
+    @Override
+    public AirbnbListing get(int index) {
+        if (index < 0 || index >= rows.length) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + rows.length);
+        int pageNumber = index / PAGE_SIZE;
+        AirbnbListing[] page = pages.get(pageNumber);
+        if (page == null) {
+            // It wasn't made in time, so make it now...
+            page = makePage(pageNumber);
+            pages.put(pageNumber, page);
+        }
+        // Get the next and previous pages ready, in case the user is scrolling...
+        prefetch(pageNumber + 1);
+        prefetch(pageNumber - 1);
+        return page[index % PAGE_SIZE];
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    private void prefetch(int pageNumber) {
+        if (pageNumber < 0 || pageNumber * PAGE_SIZE >= rows.length || pending.contains(pageNumber)) return;
+        // Note: Not using get() here, so prefetching doesn't count as a cache hit or miss and doesn't change which page is least recently used.
+        if (pages.contains(pageNumber)) return;
+        if (!pending.add(pageNumber)) return;
+        PAGER.execute(() -> {
+            try {
+                if (!pages.contains(pageNumber)) pages.put(pageNumber, makePage(pageNumber));
+            } finally {
+                pending.remove(pageNumber);
+            }
+        });
+    }
+
+    private AirbnbListing[] makePage(int pageNumber) {
+        int start = pageNumber * PAGE_SIZE;
+        AirbnbListing[] page = new AirbnbListing[Math.min(PAGE_SIZE, rows.length - start)];
+        for (int i = 0; i < page.length; i++) page[i] = listings.getListing(rows[start + i]);
+        return page;
+    }
+}
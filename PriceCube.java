@@ -0,0 +1,150 @@
+/**
+ * Pre-calculated totals of the listings in a {@link ListingsTable}, for every combination of borough,
+ * room type and price bucket. The statistics and the count per borough of any price range which lines up
+ * with the buckets can then be worked out by adding up a few hundred cells, rather than looking at every row.
+ *
+ * The price buckets match the choices in the GUI (£0 to £1000 in steps of £100, and more than £1000).
+ * As both ends of the price filter are inclusive, every multiple of £100 gets a bucket of its own, with
+ * another bucket for the prices in between. So the buckets are, in order: below £0, exactly £0, £1 to £99,
+ * exactly £100, £101 to £199, ... exactly £1000, and above £1000. Any range from a multiple of £100 to
+ * another multiple of £100 (or with no lower or upper limit) is then a run of buckets next to each other.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-12
+ */
+public final class PriceCube {
+    // The gap between the prices which have their own bucket.
+    public static final int BUCKET_WIDTH = 100;
+    // The highest price which has its own bucket. Everything above this goes in the last bucket.
+    public static final int MAXIMUM_BUCKET_PRICE = 1000;
+    // Below zero, then each multiple and the gap after it, then the last multiple and everything above it.
+    private static final int BUCKETS = 1 + 2 * (MAXIMUM_BUCKET_PRICE / BUCKET_WIDTH) + 2;
+
+    private final int boroughCount;
+    private final int roomTypeCount;
+    private final int entireHomeCode;
+    // The totals for each cell. The cell for (borough, room type, bucket) is at ((borough * roomTypeCount) + roomType) * BUCKETS + bucket.
+    private final int[] counts;
+    private final int[] availableCounts;
+    private final int[] reviews;
+    private final int[] minimumPrices;
+    private final double[] reviewsPerMonth;
+
+    /**
+     * Build the cube for a table. This looks at every row once.
+     *
+     * @param table The table to build the cube for.
+     */
+    PriceCube(ListingsTable table) {
+        boroughCount = table.boroughNames().length;
+        roomTypeCount = table.roomTypeNames().length;
+        entireHomeCode = table.getRoomTypeCode("Entire home/apt");
+        int cells = boroughCount * roomTypeCount * BUCKETS;
+        counts = new int[cells];
+        availableCounts = new int[cells];
+        reviews = new int[cells];
+        minimumPrices = new int[cells];
+        reviewsPerMonth = new double[cells];
+
+        int[] boroughs = table.boroughs();
+        int[] roomTypes = table.roomTypes();
+        int[] prices = table.prices();
+        int[] minimumNights = table.minimumNights();
+        int[] numberOfReviews = table.numberOfReviews();
+        double[] rowReviewsPerMonth = table.reviewsPerMonth();
+        int[] availability = table.availability365();
+        for (int row = 0; row < table.size(); row++) {
+            int cell = (boroughs[row] * roomTypeCount + roomTypes[row]) * BUCKETS + bucket(prices[row]);
+            counts[cell]++;
+            if (availability[row] > 0) availableCounts[cell]++;
+            reviews[cell] += numberOfReviews[row];
+            minimumPrices[cell] += minimumNights[row] * prices[row];
+            reviewsPerMonth[cell] += rowReviewsPerMonth[row];
+        }
+    }
+
+    /**
+     * Check if a price range lines up with the buckets, so it can be answered by this cube.
+     *
+     * @param lower The lowest price in the range (inclusive). Integer.MIN_VALUE for no lower limit.
+     * @param upper The highest price in the range (inclusive). Integer.MAX_VALUE for no upper limit.
+     * @return true if {@link #countPerBorough} and {@link #accumulate} can be used for the range.
+     */
+    public boolean supportsRange(int lower, int upper) {
+        return lowerBucket(lower) >= 0 && upperBucket(upper) >= 0;
+    }
+
+    /**
+     * Count the listings in each borough with a price in the range.
+     *
+     * @param lower The lowest price in the range (inclusive). Must be supported, see {@link #supportsRange}.
+     * @param upper The highest price in the range (inclusive).
+     * @return The number of listings in the range for each borough code of the table.
+     */
+    public int[] countPerBorough(int lower, int upper) {
+        int from = lowerBucket(lower), to = upperBucket(upper);
+        int[] boroughCounts = new int[boroughCount];
+        for (int borough = 0; borough < boroughCount; borough++) {
+            for (int roomType = 0; roomType < roomTypeCount; roomType++) {
+                int start = (borough * roomTypeCount + roomType) * BUCKETS;
+                for (int bucket = from; bucket <= to; bucket++) boroughCounts[borough] += counts[start + bucket];
+            }
+        }
+        return boroughCounts;
+    }
+
+    /**
+     * Add up the cells for a price range into a {@link StatisticsAccumulator}, to get the statistics of the
+     * listings in the range.
+     *
+     * @param table The table this cube was built for.
+     * @param lower The lowest price in the range (inclusive). Must be supported, see {@link #supportsRange}.
+     * @param upper The highest price in the range (inclusive).
+     * @param boroughCode The code of the only borough to include, or -1 to include every borough.
+     * @return An accumulator with the totals of all the listings in the range.
+     */
+    public StatisticsAccumulator accumulate(ListingsTable table, int lower, int upper, int boroughCode) {
+        int from = lowerBucket(lower), to = upperBucket(upper);
+        StatisticsAccumulator accumulator = new StatisticsAccumulator(table);
+        for (int borough = 0; borough < boroughCount; borough++) {
+            if (boroughCode >= 0 && borough != boroughCode) continue;
+            for (int roomType = 0; roomType < roomTypeCount; roomType++) {
+                int start = (borough * roomTypeCount + roomType) * BUCKETS;
+                for (int cell = start + from; cell <= start + to; cell++) {
+                    if (counts[cell] == 0) continue;
+                    accumulator.addTotals(borough, counts[cell], availableCounts[cell], roomType == entireHomeCode ? counts[cell] : 0,
+                            reviews[cell], minimumPrices[cell], reviewsPerMonth[cell]);
+                }
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Get the bucket a price goes in. The buckets are in the same order as the prices.
+     */
+    static int bucket(int price) {
+        if (price < 0) return 0;
+        if (price > MAXIMUM_BUCKET_PRICE) return BUCKETS - 1;
+        // Multiples have their own bucket, anything else goes in the one after...
+        return 1 + 2 * (price / BUCKET_WIDTH) + (price % BUCKET_WIDTH == 0 ? 0 : 1);
+    }
+
+    /**
+     * Get the first bucket of a range starting at the price given, or -1 if the price isn't at the start of a bucket.
+     */
+    private static int lowerBucket(int lower) {
+        if (lower == Integer.MIN_VALUE) return 0;
+        if (lower < 0 || lower > MAXIMUM_BUCKET_PRICE || lower % BUCKET_WIDTH != 0) return -1;
+        return bucket(lower);
+    }
+
+    /**
+     * Get the last bucket of a range ending at the price given, or -1 if the price isn't at the end of a bucket.
+     */
+    private static int upperBucket(int upper) {
+        if (upper == Integer.MAX_VALUE) return BUCKETS - 1;
+        if (upper < 0 || upper > MAXIMUM_BUCKET_PRICE || upper % BUCKET_WIDTH != 0) return -1;
+        return bucket(upper);
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An index of the rows of a {@link ListingsTable} sorted by price, both for the whole table and for each borough.
+ * Finding the rows in a price range is then two binary searches, and the rows in between are the answer.
+ * This means the time taken depends on how many rows are found, not on how many rows are in the table.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public final class PriceIndex {
+    // Every row, sorted by price (rows with the same price are in ordinal order), with the prices in the same order.
+    private final int[] rows;
+    private final int[] prices;
+    // The rows again, grouped by borough and sorted by price within each borough. Borough b is from boroughStarts[b] to boroughStarts[b + 1].
+    private final int[] boroughRows;
+    private final int[] boroughPrices;
+    private final int[] boroughStarts;
+
+    /**
+     * Build the index for a table.
+     *
+     * @param table The table to build the index for.
+     */
+    PriceIndex(ListingsTable table) {
+        int size = table.size();
+        int[] tablePrices = table.prices();
+        int[] boroughs = table.boroughs();
+        // Sort the rows by price, by putting the price in the top half of a long and the row in the bottom half...
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) keys[row] = ((long) tablePrices[row] << 32) | row;
+        Arrays.sort(keys);
+        rows = new int[size];
+        prices = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = (int) keys[i];
+            prices[i] = (int) (keys[i] >> 32);
+        }
+
+        // Then split them up by borough, keeping them in the same order...
+        boroughStarts = new int[table.boroughNames().length + 1];
+        for (int row = 0; row < size; row++) boroughStarts[boroughs[row] + 1]++;
+        for (int borough = 0; borough < table.boroughNames().length; borough++) boroughStarts[borough + 1] += boroughStarts[borough];
+        int[] next = Arrays.copyOf(boroughStarts, boroughStarts.length - 1);
+        boroughRows = new int[size];
+        boroughPrices = new int[size];
+        for (int i = 0; i < size; i++) {
+            int position = next[boroughs[rows[i]]]++;
+            boroughRows[position] = rows[i];
+            boroughPrices[position] = prices[i];
+        }
+    }
+
+    /**
+     * Count the rows with a price in the range, without finding them.
+     *
+     * @param lower The lowest price (inclusive).
+     * @param upper The highest price (inclusive).
+     * @param boroughCode The code of the borough to look in, or -1 for every borough.
+     * @return The number of rows in the range.
+     */
+    public int countInRange(int lower, int upper, int boroughCode) {
+        if (lower > upper) return 0;
+        if (boroughCode < 0) return firstAbove(prices, 0, prices.length, upper) - firstAtLeast(prices, 0, prices.length, lower);
+        int from = boroughStarts[boroughCode], to = boroughStarts[boroughCode + 1];
+        return firstAbove(boroughPrices, from, to, upper) - firstAtLeast(boroughPrices, from, to, lower);
+    }
+
+    /**
+     * Find the rows with a price in the range.
+     *
+     * @param lower The lowest price (inclusive).
+     * @param upper The highest price (inclusive).
+     * @param boroughCode The code of the borough to look in, or -1 for every borough.
+     * @return The ordinals of the rows in the range, in ascending order.
+     */
+    public int[] rowsInRange(int lower, int upper, int boroughCode) {
+        if (lower > upper) return new int[0];
+        int[] found;
+        if (boroughCode < 0) {
+            found = Arrays.copyOfRange(rows, firstAtLeast(prices, 0, prices.length, lower), firstAbove(prices, 0, prices.length, upper));
+        } else {
+            int from = boroughStarts[boroughCode], to = boroughStarts[boroughCode + 1];
+            found = Arrays.copyOfRange(boroughRows, firstAtLeast(boroughPrices, from, to, lower), firstAbove(boroughPrices, from, to, upper));
+        }
+        // They come out in price order, but everything else expects them in row order...
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Set the bit of each row with a price in the range. This is for when the rows are wanted as a bitset anyway,
+     * since it doesn't need to sort them back into row order like {@link #rowsInRange} does.
+     *
+     * @param lower The lowest price (inclusive).
+     * @param upper The highest price (inclusive).
+     * @param boroughCode The code of the borough to look in, or -1 for every borough.
+     * @param found The bitset to set the bits of the rows in.
+     */
+    public void setRowsInRange(int lower, int upper, int boroughCode, BitSet found) {
+        if (lower > upper) return;
+        int[] indexRows = boroughCode < 0 ? rows : boroughRows;
+        int[] indexPrices = boroughCode < 0 ? prices : boroughPrices;
+        int from = boroughCode < 0 ? 0 : boroughStarts[boroughCode];
+        int to = boroughCode < 0 ? prices.length : boroughStarts[boroughCode + 1];
+        int end = firstAbove(indexPrices, from, to, upper);
+        for (int i = firstAtLeast(indexPrices, from, to, lower); i < end; i++) found.set(indexRows[i]);
+    }
+
+    /**
+     * Binary search for the first index in the range with a price of at least the one given.
+     */
+    private static int firstAtLeast(int[] sortedPrices, int from, int to, int price) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (sortedPrices[middle] < price) from = middle + 1;
+            else to = middle;
+        }
+        return from;
+    }
+
+    /**
+     * Binary search for the first index in the range with a price above the one given.
+     */
+    private static int firstAbove(int[] sortedPrices, int from, int to, int price) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (sortedPrices[middle] <= price) from = middle + 1;
+            else to = middle;
+        }
+        return from;
+    }
+}
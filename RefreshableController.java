@@ -0,0 +1,19 @@
+/**
+ * This interface is used by the panels in the GUI.
+ * The GUI keeps the panels it has loaded, so instead of loading a panel again when the filter changes,
+ * the controller of the panel on screen is subscribed to the {@link FilterState} and is told to show the new filter.
+ * A hidden panel is told when it is shown again, if the filter has changed since.
+ * A popped out panel is only told once, so it doesn't update.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public interface RefreshableController {
+    /**
+     * Show the listings from a different filter. This is called on the JavaFX thread,
+     * after the filter's statistics and counts have been worked out, so it should be quick.
+     *
+     * @param filter The filter to show.
+     */
+    void refresh(ListingsFilter filter);
+}
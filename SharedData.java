@@ -1,12 +0,0 @@
-/**
- * A class storing all the data that is shared with everything the program.
- * 
- * @author Skye Macdonald (k19015078)
- * @version 2020-03-26
- */
-public final class SharedData {
-    // I don't want anyone to be able to make an instance of this object...
-    private SharedData() {}
-    
-    public static ListingsFilter listingsFilter;
-}
@@ -0,0 +1,101 @@
+import java.util.*;
+
+/**
+ * Every row of a {@link ListingsTable}, already sorted by each of the columns the listings window can sort by.
+ * Rows with the same value are in ordinal order, so this is the same order a stable sort of the whole table gives.
+ *
+ * The rows of any filter can then be put in order without comparing anything: go through the sorted rows and
+ * keep the ones that passed the filter. Sorting in reverse goes through them backwards (keeping rows with the
+ * same value in ordinal order, like a stable sort does).
+ *
+ * Each column is only sorted the first time it is needed, or when {@link #buildAll()} is called.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-20
+ */
+public final class SortIndex {
+    private final ListingsTable table;
+    // For each sort option: the rows in order, and the value each row was sorted by (indexed by ordinal).
+    private final Map<String, int[]> orders = new HashMap<>();
+    private final Map<String, int[]> keys = new HashMap<>();
+
+    /**
+     * Create the index for a table. Nothing is sorted yet.
+     *
+     * @param table The table to index.
+     */
+    SortIndex(ListingsTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Sort every column now, so nothing has to wait for it later.
+     */
+    public void buildAll() {
+        for (String sortBy : ListingsSorter.SORT_OPTIONS) order(sortBy);
+    }
+
+    /**
+     * Put some of the rows of the table in order.
+     *
+     * @param rows The ordinals of the rows, which must be in ascending order (like the filter gives them).
+     * @param sortBy The name of the column to sort by, one of {@link ListingsSorter#SORT_OPTIONS}.
+     * @param reverse Whether to sort in descending order instead.
+     * @return A new array of the ordinals, in order.
+     */
+    public int[] sortedRows(int[] rows, String sortBy, boolean reverse) {
+        int[] order = order(sortBy);
+        int[] sortKeys = keys(sortBy);
+        // Mark the rows we want, unless it's all of them...
+        BitSet wanted = null;
+        if (rows.length != table.size()) {
+            wanted = new BitSet(table.size());
+            for (int row : rows) wanted.set(row);
+        }
+        int[] sorted = new int[rows.length];
+        int count = 0;
+        if (!reverse) {
+            for (int row : order) {
+                if (wanted == null || wanted.get(row)) sorted[count++] = row;
+            }
+        } else {
+            // Go backwards a group of equal values at a time, but forwards within each group...
+            int end = order.length;
+            while (end > 0) {
+                int start = end - 1;
+                int key = sortKeys[order[start]];
+                while (start > 0 && sortKeys[order[start - 1]] == key) start--;
+                for (int i = start; i < end; i++) {
+                    int row = order[i];
+                    if (wanted == null || wanted.get(row)) sorted[count++] = row;
+                }
+                end = start;
+            }
+        }
+        return sorted;
+    }
+
+    private synchronized int[] order(String sortBy) {
+        int[] order = orders.get(sortBy);
+        if (order == null) {
+            int[] sortKeys;
+            if (sortBy.equals(ListingsSorter.HOST_NAME)) {
+                String[] hostNames = new String[table.size()];
+                for (int row = 0; row < hostNames.length; row++) hostNames[row] = table.getHostName(row);
+                sortKeys = ListingsSorter.rank(hostNames);
+            } else {
+                sortKeys = ListingsSorter.intColumn(table, sortBy);
+            }
+            // Sorting every row by its key gives the ordinals in order, as the position is the ordinal.
+            order = ListingsSorter.sortPositions(sortKeys, false);
+            keys.put(sortBy, sortKeys);
+            orders.put(sortBy, order);
+        }
+        return order;
+    }
+
+    private synchronized int[] keys(String sortBy) {
+        order(sortBy);
+        return keys.get(sortBy);
+    }
+}
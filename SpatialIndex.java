@@ -0,0 +1,334 @@
+import java.util.Arrays;
+
+/**
+ * An index of where the listings in a {@link ListingsTable} are, so the listings in a box on the map, within some
+ * distance of a point, or nearest to a point can be found without looking at every listing.
+ *
+ * The listings are put in a grid of equal sized cells, with about {@link #ROWS_PER_CELL} listings in each cell on
+ * average. The rows are stored cell by cell, so a query only looks at the cells it overlaps and the listings in them.
+ *
+ * Distances are in metres, on a flat map centred on the listings (the longitude is scaled by the cosine of the
+ * middle latitude). Across somewhere the size of London this is out by less than one percent.
+ * Listings without a location (a latitude or longitude of -1, which is what the loader uses when it is missing)
+ * aren't in the index, so they are never found.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public final class SpatialIndex {
+    // The average number of listings in a cell. Smaller cells mean fewer listings to check, but more cells to go through...
+    static final int ROWS_PER_CELL = 16;
+    // The number of metres in a degree of latitude (using the mean radius of the earth).
+    static final double METRES_PER_DEGREE = 6_371_008.8 * Math.PI / 180;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // The flat map: x = (longitude - originLongitude) * metresPerDegreeLongitude, y = (latitude - originLatitude) * METRES_PER_DEGREE.
+    private final double originLatitude;
+    private final double originLongitude;
+    // The north east corner of the listings (the origin is the south west one).
+    private final double northLatitude;
+    private final double eastLongitude;
+    private final double metresPerDegreeLongitude;
+    // The grid, which covers every listing in the index...
+    private final int columns;
+    private final int rows;
+    private final double cellWidth;
+    private final double cellHeight;
+    // The listings in cell c are cellRows[cellStarts[c]] to cellRows[cellStarts[c + 1] - 1], in ordinal order,
+    // with their positions on the flat map in the same order, so they can be checked without looking elsewhere.
+    private final int[] cellStarts;
+    private final int[] cellRows;
+    private final double[] cellX;
+    private final double[] cellY;
+
+    /**
+     * Build the index for a table. This goes through the rows twice.
+     *
+     * @param table The table to build the index for.
+     */
+    SpatialIndex(ListingsTable table) {
+        latitudes = table.latitudes();
+        longitudes = table.longitudes();
+        int size = table.size();
+
+        // Find the area covered by the listings...
+        double south = Double.POSITIVE_INFINITY, north = Double.NEGATIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY, east = Double.NEGATIVE_INFINITY;
+        int located = 0;
+        for (int row = 0; row < size; row++) {
+            if (!hasLocation(row)) continue;
+            south = Math.min(south, latitudes[row]);
+            north = Math.max(north, latitudes[row]);
+            west = Math.min(west, longitudes[row]);
+            east = Math.max(east, longitudes[row]);
+            located++;
+        }
+        if (located == 0) south = north = west = east = 0;
+        originLatitude = south;
+        originLongitude = west;
+        northLatitude = north;
+        eastLongitude = east;
+        metresPerDegreeLongitude = METRES_PER_DEGREE * Math.cos(Math.toRadians((south + north) / 2));
+
+        // Then split it into cells which are roughly square...
+        double width = x(east), height = y(north);
+        int cells = Math.max(1, located / ROWS_PER_CELL);
+        double cellSize = width > 0 && height > 0 ? Math.sqrt(width * height / cells) : Math.max(Math.max(width, height) / cells, 1);
+        columns = (int) Math.min(Math.max(1, Math.ceil(width / cellSize)), cells);
+        rows = (int) Math.min(Math.max(1, Math.ceil(height / cellSize)), cells);
+        cellWidth = width > 0 ? width / columns : 1;
+        cellHeight = height > 0 ? height / rows : 1;
+
+        // Count the listings in each cell, then put each one in its place...
+        int[] cellOfRow = new int[size];
+        cellStarts = new int[columns * rows + 1];
+        for (int row = 0; row < size; row++) {
+            if (!hasLocation(row)) {
+                cellOfRow[row] = -1;
+                continue;
+            }
+            int cell = cell(column(x(longitudes[row])), gridRow(y(latitudes[row])));
+            cellOfRow[row] = cell;
+            cellStarts[cell + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) cellStarts[cell + 1] += cellStarts[cell];
+        int[] next = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+        cellRows = new int[located];
+        cellX = new double[located];
+        cellY = new double[located];
+        for (int row = 0; row < size; row++) {
+            if (cellOfRow[row] < 0) continue;
+            int position = next[cellOfRow[row]]++;
+            cellRows[position] = row;
+            cellX[position] = x(longitudes[row]);
+            cellY[position] = y(latitudes[row]);
+        }
+    }
+
+    /**
+     * Find the listings in a box on the map.
+     *
+     * @param south The lowest latitude (inclusive).
+     * @param west The lowest longitude (inclusive).
+     * @param north The highest latitude (inclusive).
+     * @param east The highest longitude (inclusive).
+     * @return The ordinals of the rows in the box, in ascending order.
+     */
+    public int[] rowsInBox(double south, double west, double north, double east) {
+        if (south > north || west > east) return new int[0];
+        int firstColumn = column(x(west)), lastColumn = column(x(east));
+        int firstRow = gridRow(y(south)), lastRow = gridRow(y(north));
+        int[] found = new int[countInCells(firstColumn, lastColumn, firstRow, lastRow)];
+        int count = 0;
+        for (int gridRow = firstRow; gridRow <= lastRow; gridRow++) {
+            for (int i = cellStarts[cell(firstColumn, gridRow)]; i < cellStarts[cell(lastColumn, gridRow) + 1]; i++) {
+                // Check the actual latitude and longitude, so the edges of the box are exact...
+                int row = cellRows[i];
+                double latitude = latitudes[row], longitude = longitudes[row];
+                if (latitude >= south && latitude <= north && longitude >= west && longitude <= east) found[count++] = row;
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Work out the most listings which could be in a box on the map, without looking at them.
+     * This is the number of listings in the cells the box overlaps.
+     *
+     * @param south The lowest latitude (inclusive).
+     * @param west The lowest longitude (inclusive).
+     * @param north The highest latitude (inclusive).
+     * @param east The highest longitude (inclusive).
+     * @return The most listings which could be in the box.
+     */
+    public int estimateInBox(double south, double west, double north, double east) {
+        if (south > north || west > east) return 0;
+        return countInCells(column(x(west)), column(x(east)), gridRow(y(south)), gridRow(y(north)));
+    }
+
+    /**
+     * Find the listings within some distance of a point.
+     *
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param metres The distance from the point (inclusive).
+     * @return The ordinals of the rows within the distance, in ascending order.
+     */
+    public int[] rowsWithin(double latitude, double longitude, double metres) {
+        if (metres < 0) return new int[0];
+        double x = x(longitude), y = y(latitude);
+        int firstColumn = column(x - metres), lastColumn = column(x + metres);
+        int firstRow = gridRow(y - metres), lastRow = gridRow(y + metres);
+        int[] found = new int[countInCells(firstColumn, lastColumn, firstRow, lastRow)];
+        int count = 0;
+        double limit = metres * metres;
+        for (int gridRow = firstRow; gridRow <= lastRow; gridRow++) {
+            for (int i = cellStarts[cell(firstColumn, gridRow)]; i < cellStarts[cell(lastColumn, gridRow) + 1]; i++) {
+                double dx = cellX[i] - x, dy = cellY[i] - y;
+                if (dx * dx + dy * dy <= limit) found[count++] = cellRows[i];
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Work out the most listings which could be within some distance of a point, without looking at them.
+     * This is the number of listings in the cells the square around the circle overlaps.
+     *
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param metres The distance from the point (inclusive).
+     * @return The most listings which could be within the distance.
+     */
+    public int estimateWithin(double latitude, double longitude, double metres) {
+        if (metres < 0) return 0;
+        double x = x(longitude), y = y(latitude);
+        return countInCells(column(x - metres), column(x + metres), gridRow(y - metres), gridRow(y + metres));
+    }
+
+    /**
+     * Check if a listing is within some distance of a point, measured the same way as {@link #rowsWithin}.
+     *
+     * @param row The ordinal of the row.
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param metres The distance from the point (inclusive).
+     * @return true if the listing has a location, and it is within the distance.
+     */
+    public boolean isWithin(int row, double latitude, double longitude, double metres) {
+        if (!hasLocation(row)) return false;
+        double dx = x(longitudes[row]) - x(longitude), dy = y(latitudes[row]) - y(latitude);
+        return dx * dx + dy * dy <= metres * metres;
+    }
+
+    /**
+     * Find the listings nearest to a point.
+     * The cells are looked at in rings around the point, stopping once a ring is too far away to have anything nearer.
+     *
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param count The number of listings to find.
+     * @return The ordinals of the nearest rows, nearest first (rows the same distance away are in ordinal order).
+     *         There are fewer than count if there aren't that many listings with a location.
+     */
+    public int[] nearest(double latitude, double longitude, int count) {
+        count = Math.min(count, cellRows.length);
+        if (count <= 0) return new int[0];
+        double x = x(longitude), y = y(latitude);
+        // The cell the point is in, or the nearest cell on the edge of the grid if it's outside. The stopping rule
+        // still works from an edge cell, as the point is only further from the cells the other side of it...
+        int centreColumn = column(x), centreRow = gridRow(y);
+        double smallestCell = Math.min(cellWidth, cellHeight);
+        Nearest nearest = new Nearest(count);
+        for (int ring = 0; ; ring++) {
+            // Everything in this ring is at least (ring - 1) cells away, so stop if that's further than the furthest one found...
+            if (nearest.isFull() && (ring - 1) * smallestCell > Math.sqrt(nearest.furthestDistance())) break;
+            int firstColumn = centreColumn - ring, lastColumn = centreColumn + ring;
+            int firstRow = centreRow - ring, lastRow = centreRow + ring;
+            for (int gridRow = Math.max(firstRow, 0); gridRow <= Math.min(lastRow, rows - 1); gridRow++) {
+                if (gridRow == firstRow || gridRow == lastRow) {
+                    // The top and bottom of the ring are whole rows of cells...
+                    for (int column = Math.max(firstColumn, 0); column <= Math.min(lastColumn, columns - 1); column++) offerCell(nearest, column, gridRow, x, y);
+                } else {
+                    // And the sides are just the cells at each end.
+                    if (firstColumn >= 0) offerCell(nearest, firstColumn, gridRow, x, y);
+                    if (lastColumn < columns && lastColumn != firstColumn) offerCell(nearest, lastColumn, gridRow, x, y);
+                }
+            }
+            // Once the ring covers the whole grid, there's nothing else to look at.
+            if (firstColumn <= 0 && lastColumn >= columns - 1 && firstRow <= 0 && lastRow >= rows - 1) break;
+        }
+        return nearest.best;
+    }
+
+    private void offerCell(Nearest nearest, int column, int gridRow, double x, double y) {
+        int cell = cell(column, gridRow);
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            double dx = cellX[i] - x, dy = cellY[i] - y;
+            nearest.offer(dx * dx + dy * dy, cellRows[i]);
+        }
+    }
+
+
+    // The corners of the smallest box holding every listing in the index...
+    double getSouth() { return originLatitude; }
+    double getWest() { return originLongitude; }
+    double getNorth() { return northLatitude; }
+    double getEast() { return eastLongitude; }
+
+    /**
+     * Get the number of metres in a degree of longitude on the flat map. (A degree of latitude is always the same.)
+     */
+    double getMetresPerDegreeLongitude() {
+        return metresPerDegreeLongitude;
+    }
+
+    private boolean hasLocation(int row) {
+        return latitudes[row] != -1 && longitudes[row] != -1;
+    }
+
+    // Positions on the flat map...
+    private double x(double longitude) { return (longitude - originLongitude) * metresPerDegreeLongitude; }
+    private double y(double latitude) { return (latitude - originLatitude) * METRES_PER_DEGREE; }
+
+    // The cell a position is in. Positions outside the grid are put in the nearest cell on the edge.
+    private int column(double x) { return (int) Math.max(0, Math.min(columns - 1, Math.floor(x / cellWidth))); }
+    private int gridRow(double y) { return (int) Math.max(0, Math.min(rows - 1, Math.floor(y / cellHeight))); }
+    private int cell(int column, int gridRow) { return gridRow * columns + column; }
+
+    /**
+     * Count the listings in a block of cells. The cells of each row of the grid are stored one after another,
+     * so each row of the block is one range.
+     */
+    private int countInCells(int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        int count = 0;
+        for (int gridRow = firstRow; gridRow <= lastRow; gridRow++) {
+            count += cellStarts[cell(lastColumn, gridRow) + 1] - cellStarts[cell(firstColumn, gridRow)];
+        }
+        return count;
+    }
+
+    /**
+     * The nearest listings found so far, nearest first, by squared distance.
+     */
+    private static final class Nearest {
+        private final int[] best;
+        private final double[] distances;
+        private int found = 0;
+
+        Nearest(int count) {
+            best = new int[count];
+            distances = new double[count];
+        }
+
+        boolean isFull() {
+            return found == best.length;
+        }
+
+        double furthestDistance() {
+            return distances[found - 1];
+        }
+
+        void offer(double distance, int row) {
+            if (isFull() && !isCloser(distance, row, found - 1)) return;
+            // Insert it in order, dropping the furthest if it's full...
+            int position = isFull() ? found - 1 : found++;
+            while (position > 0 && isCloser(distance, row, position - 1)) {
+                best[position] = best[position - 1];
+                distances[position] = distances[position - 1];
+                position--;
+            }
+            best[position] = row;
+            distances[position] = distance;
+        }
+
+        private boolean isCloser(double distance, int row, int position) {
+            return distance < distances[position] || (distance == distances[position] && row < best[position]);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The test class SpatialIndexTest.
+ * This checks the boxes, circles and nearest listings found with the grid against looking at every listing.
+ * The locations are rounded, so lots of listings are in the same place and the order of ties is checked too.
+ * Some listings have no location (-1), and the queries go off the edges of the grid and right outside it,
+ * where the cells have to be clamped to the grid and the rings of the nearest search are mostly empty.
+ *
+ * @author  Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+public class SpatialIndexTest
+{
+    private final ListingsTable table = randomTable(new Random(2020), 3000, 51.3, -0.5, 0.4, 0.6);
+
+    /**
+     * Test boxes inside, across the edge of, and outside the listings.
+     */
+    @Test
+    public void rowsInBoxSameAsScan() {
+        Random random = new Random(1);
+        SpatialIndex index = table.spatialIndex();
+        for (int i = 0; i < 500; i++) {
+            double south = 51.2 + random.nextDouble() * 0.6, west = -0.6 + random.nextDouble() * 0.8;
+            double height = random.nextBoolean() ? random.nextDouble() * 0.02 : random.nextDouble() * 0.5;
+            double width = random.nextBoolean() ? random.nextDouble() * 0.02 : random.nextDouble() * 0.5;
+            assertBoxSameAsScan(table, south, west, south + height, west + width);
+        }
+        // The whole grid, exactly and with room to spare...
+        assertBoxSameAsScan(table, index.getSouth(), index.getWest(), index.getNorth(), index.getEast());
+        assertBoxSameAsScan(table, -90, -180, 90, 180);
+        // Boxes right outside the listings, on each side, and one round the listings without a location...
+        assertBoxSameAsScan(table, 52, -0.3, 53, -0.2);
+        assertBoxSameAsScan(table, 50, -0.3, 51, -0.2);
+        assertBoxSameAsScan(table, 51.4, 1, 51.5, 2);
+        assertBoxSameAsScan(table, 51.4, -2, 51.5, -1);
+        assertBoxSameAsScan(table, -1.5, -1.5, -0.5, -0.5);
+        // And boxes which are inside out.
+        assertBoxSameAsScan(table, 51.6, -0.3, 51.4, -0.1);
+        assertBoxSameAsScan(table, 51.4, -0.1, 51.6, -0.3);
+    }
+
+    /**
+     * Test circles inside, across the edge of, and outside the listings.
+     */
+    @Test
+    public void rowsWithinSameAsScan() {
+        Random random = new Random(2);
+        for (int i = 0; i < 500; i++) {
+            double latitude = 51.2 + random.nextDouble() * 0.6, longitude = -0.6 + random.nextDouble() * 0.8;
+            double metres = random.nextBoolean() ? random.nextDouble() * 2000 : random.nextDouble() * 40000;
+            assertWithinSameAsScan(table, latitude, longitude, metres);
+        }
+        // Centred outside the grid, reaching in and not...
+        assertWithinSameAsScan(table, 51.9, -0.2, 60000);
+        assertWithinSameAsScan(table, 51.9, -0.2, 1000);
+        assertWithinSameAsScan(table, 51.5, 0.5, 30000);
+        assertWithinSameAsScan(table, 0, 0, 1e7);
+        // Around the listings without a location, no distance at all, and a negative distance.
+        assertWithinSameAsScan(table, -1, -1, 1000);
+        assertWithinSameAsScan(table, 51.5, -0.2, 0);
+        assertWithinSameAsScan(table, 51.5, -0.2, -1);
+    }
+
+    /**
+     * Test the nearest listings to points inside and outside the grid, for small and large counts.
+     */
+    @Test
+    public void nearestSameAsScan() {
+        Random random = new Random(3);
+        int[] counts = {0, 1, 2, 5, 17, 100, 1000, table.size() + 10};
+        for (int i = 0; i < 300; i++) {
+            double latitude = 51.2 + random.nextDouble() * 0.6, longitude = -0.6 + random.nextDouble() * 0.8;
+            assertNearestSameAsScan(table, latitude, longitude, counts[random.nextInt(counts.length)]);
+        }
+        // Points outside the grid, near and far, on every side...
+        for (int count : counts) {
+            assertNearestSameAsScan(table, 51.8, -0.2, count);
+            assertNearestSameAsScan(table, 51.0, -0.2, count);
+            assertNearestSameAsScan(table, 51.5, 0.4, count);
+            assertNearestSameAsScan(table, 51.5, -0.9, count);
+            assertNearestSameAsScan(table, 52.5, 1.5, count);
+            assertNearestSameAsScan(table, -1, -1, count);
+            assertNearestSameAsScan(table, -45, 170, count);
+        }
+    }
+
+    /**
+     * Test tables where the grid is a single cell, a single line of cells, or has nothing in it at all.
+     */
+    @Test
+    public void awkwardTablesSameAsScan() {
+        List<ListingsTable> tables = new ArrayList<>();
+        tables.add(randomTable(new Random(4), 500, 51.5, -0.1, 0, 0));
+        tables.add(randomTable(new Random(5), 500, 51.5, -0.3, 0, 0.4));
+        tables.add(randomTable(new Random(6), 500, 51.3, -0.1, 0.4, 0));
+        tables.add(randomTable(new Random(7), 5, 51.3, -0.3, 0.4, 0.4));
+        tables.add(ListingsTable.of(new ArrayList<>()));
+        List<AirbnbListing> lost = new ArrayList<>();
+        for (int i = 0; i < 50; i++) lost.add(listing(i, -1, -1));
+        tables.add(ListingsTable.of(lost));
+
+        Random random = new Random(8);
+        for (ListingsTable awkward : tables) {
+            for (int i = 0; i < 50; i++) {
+                double latitude = 51.2 + random.nextDouble() * 0.6, longitude = -0.4 + random.nextDouble() * 0.6;
+                double size = random.nextDouble() * 0.3;
+                assertBoxSameAsScan(awkward, latitude, longitude, latitude + size, longitude + size);
+                assertWithinSameAsScan(awkward, latitude, longitude, random.nextDouble() * 20000);
+                assertNearestSameAsScan(awkward, latitude, longitude, 1 + random.nextInt(20));
+            }
+            assertBoxSameAsScan(awkward, -90, -180, 90, 180);
+            assertNearestSameAsScan(awkward, -45, 170, 10);
+        }
+    }
+
+    private static void assertBoxSameAsScan(ListingsTable table, double south, double west, double north, double east) {
+        List<Integer> wanted = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            double latitude = table.latitudes()[row], longitude = table.longitudes()[row];
+            if (latitude == -1 || longitude == -1) continue;
+            if (latitude >= south && latitude <= north && longitude >= west && longitude <= east) wanted.add(row);
+        }
+        String box = "The box " + south + ", " + west + " to " + north + ", " + east;
+        assertEquals(box + " should have the same rows as a scan", wanted.toString(),
+                Arrays.toString(table.spatialIndex().rowsInBox(south, west, north, east)));
+        assertTrue(box + " should never have more than its estimate", wanted.size() <= table.spatialIndex().estimateInBox(south, west, north, east));
+    }
+
+    private static void assertWithinSameAsScan(ListingsTable table, double latitude, double longitude, double metres) {
+        List<Integer> wanted = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            if (distance(table, row, latitude, longitude) <= metres * metres && metres >= 0) wanted.add(row);
+        }
+        String circle = metres + "m around " + latitude + ", " + longitude;
+        assertEquals(circle + " should have the same rows as a scan", wanted.toString(),
+                Arrays.toString(table.spatialIndex().rowsWithin(latitude, longitude, metres)));
+        assertTrue(circle + " should never have more than its estimate", wanted.size() <= table.spatialIndex().estimateWithin(latitude, longitude, metres));
+    }
+
+    private static void assertNearestSameAsScan(ListingsTable table, double latitude, double longitude, int count) {
+        List<Integer> located = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            if (table.latitudes()[row] != -1 && table.longitudes()[row] != -1) located.add(row);
+        }
+        // Nearest first, and ties in ordinal order...
+        located.sort(Comparator.comparingDouble((Integer row) -> distance(table, row, latitude, longitude)).thenComparingInt(row -> row));
+        List<Integer> wanted = located.subList(0, Math.min(count, located.size()));
+        assertEquals("The nearest " + count + " to " + latitude + ", " + longitude + " should be the same as a scan",
+                wanted.toString(), Arrays.toString(table.spatialIndex().nearest(latitude, longitude, count)));
+    }
+
+    /**
+     * The squared distance on the flat map, worked out the same way as the index, or infinity without a location.
+     */
+    private static double distance(ListingsTable table, int row, double latitude, double longitude) {
+        double rowLatitude = table.latitudes()[row], rowLongitude = table.longitudes()[row];
+        if (rowLatitude == -1 || rowLongitude == -1) return Double.POSITIVE_INFINITY;
+        SpatialIndex index = table.spatialIndex();
+        double metresPerDegreeLongitude = index.getMetresPerDegreeLongitude();
+        double dx = (rowLongitude - index.getWest()) * metresPerDegreeLongitude - (longitude - index.getWest()) * metresPerDegreeLongitude;
+        double dy = (rowLatitude - index.getSouth()) * SpatialIndex.METRES_PER_DEGREE - (latitude - index.getSouth()) * SpatialIndex.METRES_PER_DEGREE;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Make a table of listings spread over an area, with their locations rounded so lots are in the same place.
+     * One in twenty has no location.
+     */
+    private static ListingsTable randomTable(Random random, int count, double south, double west, double height, double width) {
+        List<AirbnbListing> listings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(20) == 0) {
+                listings.add(listing(i, -1, -1));
+            } else {
+                listings.add(listing(i, south + Math.round(random.nextDouble() * height * 500) / 500.0,
+                        west + Math.round(random.nextDouble() * width * 500) / 500.0));
+            }
+        }
+        return ListingsTable.of(listings);
+    }
+
+    private static AirbnbListing listing(int id, double latitude, double longitude) {
+        return new AirbnbListing("l" + id, "Test " + id, "h" + id, "Host", "Camden", latitude, longitude,
+                "Private room", 100, 1, 10, "01/01/2020", 0.5, 1, 100);
+    }
+}
@@ -15,17 +15,23 @@ import javafx.scene.control.Label;
  * GUI controller class for statistics
  *
  * @author Kevin Quah (K1921877) with modifications by Skye Macddonald (k19015078)
- * @version 2020-03-28
+ * @version 2020-04-23
  */
-public class StatisticGUIController implements Initializable, SharedStateController
+public class StatisticGUIController implements Initializable, RefreshableController
 {
     private enum Panel {
         FIRST, SECOND, THIRD, FOURTH
     }
-    // We want to save this when this is reloaded, so it's static...
-    public static Map<Panel, String> statisticPanels = null;
-    // Sometimes we don't want to do this though...
-    private boolean doNotSavePanels = false;
+    // The statistic options, with the first four shown to start with.
+    private static final List<String> STATISTIC_OPTIONS = List.of(
+        "Reviews per property",
+        "Total available properties",
+        "Entire homes or apartments",
+        "Most expensive borough",
+        "Properties per borough",
+        "Total reviews per month",
+        "Most reviewed borough",
+        "Most actively reviewed borough");
     
     // statistic panel
     private Statistics statistics;
@@ -52,36 +58,42 @@ public class StatisticGUIController implements Initializable, SharedStateControl
      */
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        // Create a new statistic object which stores info about the whole dataset
-        statistics = SharedData.listingsFilter.getStatistics();
-
         // Create and store statistic options
-        statDeque = new ArrayDeque<>();
-        statDeque.add("Reviews per property");
-        statDeque.add("Total available properties");
-        statDeque.add("Entire homes or apartments");
-        statDeque.add("Most expensive borough");
-        statDeque.add("Properties per borough");
-        statDeque.add("Total reviews per month");
-        statDeque.add("Most reviewed borough");
-        statDeque.add("Most actively reviewed borough");
+        statDeque = new ArrayDeque<>(STATISTIC_OPTIONS);
+
+        // Setup the initial settings of the panels...
+        setStatPanel(Panel.FIRST, statDeque.removeFirst());
+        setStatPanel(Panel.SECOND, statDeque.removeFirst());
+        setStatPanel(Panel.THIRD, statDeque.removeFirst());
+        setStatPanel(Panel.FOURTH, statDeque.removeFirst());
+    }
+
+    /**
+     * Show the statistics of a different filter, keeping the same statistic in each panel.
+     * 
+     * @param filter The filter to show the statistics of.
+     */
+    @Override
+    public void refresh(ListingsFilter filter) {
+        statistics = filter.getStatistics();
+        setStatPanel(Panel.FIRST, statTitle1.getText());
+        setStatPanel(Panel.SECOND, statTitle2.getText());
+        setStatPanel(Panel.THIRD, statTitle3.getText());
+        setStatPanel(Panel.FOURTH, statTitle4.getText());
+    }
 
-        if (statisticPanels == null) {
-            // Make sure we can save the panels
-            if (!doNotSavePanels) statisticPanels = Collections.synchronizedMap(new EnumMap<>(Panel.class));
-            
-            // Setup the initial settings of the panels...
-            setStatPanel(Panel.FIRST, statDeque.removeFirst());
-            setStatPanel(Panel.SECOND, statDeque.removeFirst());
-            setStatPanel(Panel.THIRD, statDeque.removeFirst());
-            setStatPanel(Panel.FOURTH, statDeque.removeFirst());
-        } else {
-            // Restore from the saved panels...
-            for (var entry : statisticPanels.entrySet()) {
-                String name = entry.getValue();
-                setStatPanel(entry.getKey(), name);
-                statDeque.remove(name);
-            }
+    /**
+     * Show the same statistic in each panel as another controller. Used when making pop-out windows.
+     * 
+     * @param other The controller to copy the panels of.
+     */
+    public void copyPanels(StatisticGUIController other) {
+        statDeque = new ArrayDeque<>(STATISTIC_OPTIONS);
+        String[] titles = {other.statTitle1.getText(), other.statTitle2.getText(), other.statTitle3.getText(), other.statTitle4.getText()};
+        for (Panel panel : Panel.values()) {
+            String title = titles[panel.ordinal()];
+            setStatPanel(panel, title);
+            statDeque.remove(title);
         }
     }
 
@@ -155,11 +167,10 @@ public class StatisticGUIController implements Initializable, SharedStateControl
     private void setStatPanel(Panel panel, String stat)
     {
         String info;
-        // Save this for when we reload...
-        if (!doNotSavePanels) statisticPanels.put(panel, stat);
         
-        // Retrieve the information
-        switch(stat)
+        // Retrieve the information (there isn't any until the controller has been given a filter)
+        if (statistics == null) info = "";
+        else switch(stat)
         {
             case "Reviews per property":
                 info = roundedString(statistics.getReviewsPerProperty());
@@ -222,11 +233,4 @@ public class StatisticGUIController implements Initializable, SharedStateControl
     private String roundedString(double number) {
         return String.format("%.3f", number);
     }
-
-    /**
-     * Disable the saving panels. Used when making pop-out windows.
-     */
-    public void disableSharedState() {
-        doNotSavePanels = true;
-    }
 }
@@ -4,7 +4,7 @@ import java.util.*;
  * This class calculates statistics on creation, and then allows those calculated statistics to be accessed. 
  * 
  * @author Skye Macdonald (k19015078)
- * @version 2020-03-28
+ * @version 2020-04-10
  */
 public class Statistics {
     // Instance fields that will contain the calculated statistics
@@ -24,53 +24,40 @@ public class Statistics {
      * @param dataSource A collection of {@link AirbnbListing}s that will be processed to get the statistics 
      */
     public Statistics(Collection<AirbnbListing> dataSource) {
-        int totalReviews = 0;
-        Map<String, List<AirbnbListing>> boroughs = new HashMap<>();
-        for (AirbnbListing listing : dataSource) {
-            totalReviews += listing.getNumberOfReviews();
-            // Note: This seems to be what it is referring to when it means "available" listings...
-            if (listing.getAvailability365() > 0) totalAvailableProperties++;
-            if (listing.getRoom_type().equals("Entire home/apt")) entireHomesOrApartments++;
-            String borough = listing.getNeighbourhood();
-            // If the borough isn't in the set, then add it ready for the next part...
-            boroughs.putIfAbsent(borough, new ArrayList<>());
-            // Add the minimum price to the borough...
-            boroughs.get(listing.getNeighbourhood()).add(listing);
-            // Add the number of reviews per month to the total count of reviews per month
-            totalReviewsPerMonth += listing.getReviewsPerMonth();
-        }
-        
-        mostExpensiveBorough = boroughs.entrySet().stream()
-                // Turn every entry of borough & list of minimum prices into an entry of borough & average minimum price
-                .map(entry -> Map.entry(entry.getKey(),entry.getValue().stream().mapToInt(listing -> listing.getMinimumNights() * listing.getPrice()).sum() / entry.getValue().size()))
-                // Get the maximum average minimum price, and figure out which borough it was from, then return that. Will be null in the case of no listings.
-                .max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
-        
-        mostReviewedBorough = boroughs.entrySet().stream()
-                // Map the list of listings to total number of reviews per borough...
-                .map(entry -> Map.entry(entry.getKey(), entry.getValue().stream().mapToInt(AirbnbListing::getNumberOfReviews).sum()))
-                // Take the maximum number of reviews per borough
-                .max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
-        
-        mostActivelyReviewedBorough = boroughs.entrySet().stream()
-                // Map the list of listings to average number of reviews per month per borough...
-                .map(entry -> Map.entry(entry.getKey(), entry.getValue().stream().mapToDouble(AirbnbListing::getReviewsPerMonth).sum() / entry.getValue().size()))
-                // Take the maximum number of reviews per month per borough
-                .max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
+        this(StatisticsAccumulator.of(dataSource));
+    }
+
+    /**
+     * Create a new statistics object from some of the rows in a {@link ListingsTable}.
+     * This works directly on the columns of the table, so no {@link AirbnbListing} objects are created.
+     * The results are the same as using the other constructor with the same listings.
+     * 
+     * @param table The table holding the listings.
+     * @param rows The ordinals of the rows in the table to calculate the statistics for.
+     */
+    public Statistics(ListingsTable table, int[] rows) {
+        this(StatisticsAccumulator.of(table, rows));
+    }
+
+    /**
+     * Create a new statistics object from the running totals in an accumulator.
+     * 
+     * @param totals The accumulator with all the listings added to it.
+     */
+    Statistics(StatisticsAccumulator totals) {
+        totalAvailableProperties = totals.availableProperties();
+        entireHomesOrApartments = totals.entireHomesOrApartments();
+        totalReviewsPerMonth = totals.totalReviewsPerMonth();
+        mostExpensiveBorough = totals.mostExpensiveBorough();
+        mostReviewedBorough = totals.mostReviewedBorough();
+        mostActivelyReviewedBorough = totals.mostActivelyReviewedBorough();
         
         // Calculate the average reviews per property
-        if (totalReviews > 0) reviewsPerProperty = ((double) totalReviews) / ((double) dataSource.size());
+        if (totals.totalReviews() > 0) reviewsPerProperty = ((double) totals.totalReviews()) / ((double) totals.getCount());
         
-        // Calculate the average number of properties per borough...
-        // We use this to get the number of boroughs as it has already been keeping count of them...
-        int numberOfBoroughs = boroughs.size();
-        // So we don't divide by zero!
-        if (numberOfBoroughs > 0) {
-            // We work out the total number of properties by counting the minimum prices...
-            int totalNumberOfProperties = boroughs.values().stream().mapToInt(List::size).sum();
-            // Then we calculate and set the average...
-            propertiesPerBorough = ((double) totalNumberOfProperties) / ((double) numberOfBoroughs);
-        }
+        // Calculate the average number of properties per borough... (so we don't divide by zero!)
+        int numberOfBoroughs = totals.numberOfBoroughs();
+        if (numberOfBoroughs > 0) propertiesPerBorough = ((double) totals.getCount()) / ((double) numberOfBoroughs);
     }
 
     /**
@@ -0,0 +1,345 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps running totals of everything needed to calculate the {@link Statistics} of some listings.
+ * Listings are added one at a time in a single pass, and only a few numbers are kept for each borough
+ * (rather than a list of all the listings in it). Two accumulators can be merged together, so the
+ * listings can be split up into chunks, added to separate accumulators (on separate threads even),
+ * and then combined at the end.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-11
+ */
+public final class StatisticsAccumulator {
+    // Listings are always totalled in blocks of this many, and the blocks merged in order. That way the
+    // floating point totals come out exactly the same whether or not the blocks were done in parallel.
+    static final int BLOCK_SIZE = 1 << 16;
+    // The smallest number of listings that is worth splitting up between threads.
+    static final int PARALLEL_THRESHOLD = 2 * BLOCK_SIZE;
+
+    private int count = 0;
+    private int totalReviews = 0;
+    private int availableProperties = 0;
+    private int entireHomesOrApartments = 0;
+    private double totalReviewsPerMonth = 0;
+
+    // The boroughs seen so far, in the order they were first seen. The per-borough totals below use the same index.
+    private final List<String> boroughNames = new ArrayList<>();
+    private final Map<String, Integer> boroughIndexes = new HashMap<>();
+    private int[] boroughCounts = new int[0];
+    // Note: These are ints on purpose, so the results come out exactly the same as they always have...
+    private int[] boroughMinimumPrices = new int[0];
+    private int[] boroughReviews = new int[0];
+    private double[] boroughReviewsPerMonth = new double[0];
+
+    // Only set for accumulators made for a table. The borough index is then the same as the borough code in the table.
+    private final ListingsTable table;
+    private final int entireHomeCode;
+
+    /**
+     * Create an empty accumulator, which listings can be added to with {@link #add(AirbnbListing)}.
+     */
+    public StatisticsAccumulator() {
+        this.table = null;
+        this.entireHomeCode = -1;
+    }
+
+    /**
+     * Create an empty accumulator for the rows of a table, which can be added with {@link #addRow(int)}.
+     *
+     * @param table The table that the rows come from.
+     */
+    public StatisticsAccumulator(ListingsTable table) {
+        this.table = table;
+        this.entireHomeCode = table.getRoomTypeCode("Entire home/apt");
+        for (String borough : table.boroughNames()) boroughIndex(borough);
+    }
+
+    /**
+     * Create an accumulator with every listing in a collection added to it.
+     * Large collections are split up and totalled in parallel.
+     *
+     * @param listings The listings to add.
+     * @return The new accumulator.
+     */
+    public static StatisticsAccumulator of(Collection<AirbnbListing> listings) {
+        return of(listings, shouldRunInParallel(listings.size()));
+    }
+
+    /**
+     * Create an accumulator with every listing in a collection added to it.
+     * The result is exactly the same whether or not it is done in parallel.
+     *
+     * @param listings The listings to add.
+     * @param parallel Whether to split the listings up and total them on the common {@link ForkJoinPool}.
+     * @return The new accumulator.
+     */
+    public static StatisticsAccumulator of(Collection<AirbnbListing> listings, boolean parallel) {
+        // The blocks are taken with subList, so we need a list that is quick to index...
+        List<AirbnbListing> list = listings instanceof List && listings instanceof RandomAccess ? (List<AirbnbListing>) listings : new ArrayList<>(listings);
+        return sumBlocks(list.size(), parallel, block -> {
+            StatisticsAccumulator accumulator = new StatisticsAccumulator();
+            for (AirbnbListing listing : list.subList(block * BLOCK_SIZE, Math.min(list.size(), (block + 1) * BLOCK_SIZE))) accumulator.add(listing);
+            return accumulator;
+        });
+    }
+
+    /**
+     * Create an accumulator with some of the rows of a table added to it.
+     * Lots of rows are split up and totalled in parallel.
+     *
+     * @param table The table holding the listings.
+     * @param rows The ordinals of the rows to add.
+     * @return The new accumulator.
+     */
+    public static StatisticsAccumulator of(ListingsTable table, int[] rows) {
+        return of(table, rows, shouldRunInParallel(rows.length));
+    }
+
+    /**
+     * Create an accumulator with some of the rows of a table added to it.
+     * The result is exactly the same whether or not it is done in parallel.
+     *
+     * @param table The table holding the listings.
+     * @param rows The ordinals of the rows to add.
+     * @param parallel Whether to split the rows up and total them on the common {@link ForkJoinPool}.
+     * @return The new accumulator.
+     */
+    public static StatisticsAccumulator of(ListingsTable table, int[] rows, boolean parallel) {
+        return sumBlocks(rows.length, parallel, block -> of(table, rows, block * BLOCK_SIZE, Math.min(rows.length, (block + 1) * BLOCK_SIZE)));
+    }
+
+    /**
+     * Create an accumulator with a range of the rows given added to it.
+     *
+     * @param table The table holding the listings.
+     * @param rows The ordinals of the rows.
+     * @param from The first index in rows to add (inclusive).
+     * @param to The last index in rows to add (exclusive).
+     * @return The new accumulator.
+     */
+    public static StatisticsAccumulator of(ListingsTable table, int[] rows, int from, int to) {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator(table);
+        for (int i = from; i < to; i++) accumulator.addRow(rows[i]);
+        return accumulator;
+    }
+
+    private static boolean shouldRunInParallel(int size) {
+        return size >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Total up every block, maybe in parallel, then merge the blocks together from left to right.
+     */
+    private static StatisticsAccumulator sumBlocks(int size, boolean parallel, IntFunction<StatisticsAccumulator> block) {
+        int blocks = Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        StatisticsAccumulator[] results = new StatisticsAccumulator[blocks];
+        if (parallel && blocks > 1) {
+            ForkJoinPool.commonPool().invoke(new BlockTask(results, 0, blocks, block));
+        } else {
+            for (int i = 0; i < blocks; i++) results[i] = block.apply(i);
+        }
+        StatisticsAccumulator total = results[0];
+        for (int i = 1; i < blocks; i++) total.merge(results[i]);
+        return total;
+    }
+
+    /**
+     * Totals a range of blocks, splitting it in half until there's only one block left.
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final StatisticsAccumulator[] results;
+        private final int from, to;
+        private final IntFunction<StatisticsAccumulator> block;
+
+        BlockTask(StatisticsAccumulator[] results, int from, int to, IntFunction<StatisticsAccumulator> block) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.block = block;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = block.apply(from);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BlockTask(results, from, middle, block), new BlockTask(results, middle, to, block));
+            }
+        }
+    }
+
+    /**
+     * Add a listing to the totals.
+     *
+     * @param listing The listing to add.
+     */
+    public void add(AirbnbListing listing) {
+        addValues(boroughIndex(listing.getNeighbourhood()), listing.getRoom_type().equals("Entire home/apt"),
+                listing.getPrice(), listing.getMinimumNights(), listing.getNumberOfReviews(),
+                listing.getReviewsPerMonth(), listing.getAvailability365());
+    }
+
+    /**
+     * Add a row of the table this accumulator was made for to the totals.
+     * This reads the columns directly, so no {@link AirbnbListing} is created.
+     *
+     * @param row The ordinal of the row to add.
+     * @throws IllegalStateException If this accumulator wasn't made for a table.
+     */
+    public void addRow(int row) {
+        if (table == null) throw new IllegalStateException("This accumulator isn't for a table");
+        addValues(table.boroughs()[row], table.roomTypes()[row] == entireHomeCode,
+                table.prices()[row], table.minimumNights()[row], table.numberOfReviews()[row],
+                table.reviewsPerMonth()[row], table.availability365()[row]);
+    }
+
+    private void addValues(int borough, boolean entireHome, int price, int minimumNights, int reviews, double reviewsPerMonth, int availability) {
+        count++;
+        totalReviews += reviews;
+        // Note: This seems to be what it is referring to when it means "available" listings...
+        if (availability > 0) availableProperties++;
+        if (entireHome) entireHomesOrApartments++;
+        totalReviewsPerMonth += reviewsPerMonth;
+        boroughCounts[borough]++;
+        boroughMinimumPrices[borough] += minimumNights * price;
+        boroughReviews[borough] += reviews;
+        boroughReviewsPerMonth[borough] += reviewsPerMonth;
+    }
+
+    /**
+     * Add the totals of a group of listings which are all in the same borough, such as a cell of a {@link PriceCube}.
+     *
+     * @param borough The index of the borough (the borough code for a table accumulator).
+     */
+    void addTotals(int borough, int listings, int available, int entireHomes, int reviews, int minimumPrices, double reviewsPerMonth) {
+        count += listings;
+        totalReviews += reviews;
+        availableProperties += available;
+        entireHomesOrApartments += entireHomes;
+        totalReviewsPerMonth += reviewsPerMonth;
+        boroughCounts[borough] += listings;
+        boroughMinimumPrices[borough] += minimumPrices;
+        boroughReviews[borough] += reviews;
+        boroughReviewsPerMonth[borough] += reviewsPerMonth;
+    }
+
+    /**
+     * Add all the totals from another accumulator to this one.
+     * The other accumulator is not changed. Merging the accumulators for consecutive chunks of listings
+     * in order gives the same result as adding all the listings to one accumulator.
+     *
+     * @param other The accumulator to merge into this one.
+     * @return This accumulator, so calls can be chained.
+     */
+    public StatisticsAccumulator merge(StatisticsAccumulator other) {
+        count += other.count;
+        totalReviews += other.totalReviews;
+        availableProperties += other.availableProperties;
+        entireHomesOrApartments += other.entireHomesOrApartments;
+        totalReviewsPerMonth += other.totalReviewsPerMonth;
+        for (int otherIndex = 0; otherIndex < other.boroughNames.size(); otherIndex++) {
+            // Boroughs the other one never had a listing in don't need to be added...
+            if (other.boroughCounts[otherIndex] == 0) continue;
+            int borough = boroughIndex(other.boroughNames.get(otherIndex));
+            boroughCounts[borough] += other.boroughCounts[otherIndex];
+            boroughMinimumPrices[borough] += other.boroughMinimumPrices[otherIndex];
+            boroughReviews[borough] += other.boroughReviews[otherIndex];
+            boroughReviewsPerMonth[borough] += other.boroughReviewsPerMonth[otherIndex];
+        }
+        return this;
+    }
+
+    /**
+     * Get the number of listings that have been added.
+     *
+     * @return The number of listings added so far.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Calculate the statistics from the totals so far.
+     *
+     * @return The statistics of all the listings added.
+     */
+    public Statistics toStatistics() {
+        return new Statistics(this);
+    }
+
+    // Used by Statistics to read the totals...
+    int totalReviews() { return totalReviews; }
+    int availableProperties() { return availableProperties; }
+    int entireHomesOrApartments() { return entireHomesOrApartments; }
+    double totalReviewsPerMonth() { return totalReviewsPerMonth; }
+
+    /**
+     * Get the number of boroughs that have at least one listing added.
+     */
+    int numberOfBoroughs() {
+        int boroughs = 0;
+        for (int borough = 0; borough < boroughNames.size(); borough++) if (boroughCounts[borough] > 0) boroughs++;
+        return boroughs;
+    }
+
+    /**
+     * Get the borough with the highest average minimum price, or null if there are no listings.
+     * The average is an integer division, like it always has been.
+     */
+    String mostExpensiveBorough() {
+        int best = -1;
+        for (int borough = 0; borough < boroughNames.size(); borough++) {
+            if (boroughCounts[borough] == 0) continue;
+            if (best < 0 || boroughMinimumPrices[borough] / boroughCounts[borough] > boroughMinimumPrices[best] / boroughCounts[best]) best = borough;
+        }
+        return best < 0 ? null : boroughNames.get(best);
+    }
+
+    /**
+     * Get the borough with the most reviews in total, or null if there are no listings.
+     */
+    String mostReviewedBorough() {
+        int best = -1;
+        for (int borough = 0; borough < boroughNames.size(); borough++) {
+            if (boroughCounts[borough] == 0) continue;
+            if (best < 0 || boroughReviews[borough] > boroughReviews[best]) best = borough;
+        }
+        return best < 0 ? null : boroughNames.get(best);
+    }
+
+    /**
+     * Get the borough with the highest average reviews per month, or null if there are no listings.
+     */
+    String mostActivelyReviewedBorough() {
+        int best = -1;
+        for (int borough = 0; borough < boroughNames.size(); borough++) {
+            if (boroughCounts[borough] == 0) continue;
+            if (best < 0 || boroughReviewsPerMonth[borough] / boroughCounts[borough] > boroughReviewsPerMonth[best] / boroughCounts[best]) best = borough;
+        }
+        return best < 0 ? null : boroughNames.get(best);
+    }
+
+    private int boroughIndex(String borough) {
+        Integer index = boroughIndexes.get(borough);
+        if (index != null) return index;
+        int newIndex = boroughNames.size();
+        boroughNames.add(borough);
+        boroughIndexes.put(borough, newIndex);
+        if (newIndex >= boroughCounts.length) {
+            // Make room for some more boroughs...
+            int length = Math.max(16, boroughCounts.length * 2);
+            boroughCounts = Arrays.copyOf(boroughCounts, length);
+            boroughMinimumPrices = Arrays.copyOf(boroughMinimumPrices, length);
+            boroughReviews = Arrays.copyOf(boroughReviews, length);
+            boroughReviewsPerMonth = Arrays.copyOf(boroughReviewsPerMonth, length);
+        }
+        return newIndex;
+    }
+}
@@ -1,9 +1,12 @@
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 /**
  * The test class StatisticsTest.
@@ -12,7 +15,7 @@ import java.util.Collections;
  * It also tests a case where there are no listings to ensure that the program won't crash if that happens.
  *
  * @author  Skye Macdonald (k19015078)
- * @version 2020-03-15
+ * @version 2020-04-11
  */
 public class StatisticsTest
 {
@@ -203,5 +206,38 @@ public class StatisticsTest
         assertEquals("The calculated borough with the most reviews per month per property has changed from the previously known correct value", "Westminster", statistics.getMostActivelyReviewedBorough());
     }
 
+    /**
+     * Test to make sure that calculating the statistics in parallel gives exactly the same results as doing it on one thread.
+     * This uses lots of random (but always the same) listings, so that they get split up into several blocks.
+     */
+    @Test
+    public void parallelStatisticsSameAsSerial() {
+        Random random = new Random(2020);
+        String[] boroughs = {"Walford", "Leytown", "Camden", "Hackney", "Barnet", "Ealing"};
+        String[] roomTypes = {"Entire home/apt", "Private room", "Shared room"};
+        List<AirbnbListing> listings = new ArrayList<>();
+        for (int i = 0; i < 3 * StatisticsAccumulator.BLOCK_SIZE + 123; i++) {
+            listings.add(new AirbnbListing("l" + i, "Test " + i, "h" + i, "Host", boroughs[random.nextInt(boroughs.length)],
+                    51 + random.nextDouble(), random.nextDouble(), roomTypes[random.nextInt(roomTypes.length)], random.nextInt(500),
+                    1 + random.nextInt(10), random.nextInt(200), "01/01/2020", random.nextInt(1000) / 100.0, 1, random.nextInt(366)));
+        }
+        assertSameStatistics(StatisticsAccumulator.of(listings, false).toStatistics(), StatisticsAccumulator.of(listings, true).toStatistics());
+        
+        ListingsTable table = ListingsTable.of(listings);
+        int[] rows = new int[table.size()];
+        for (int row = 0; row < rows.length; row++) rows[row] = row;
+        assertSameStatistics(StatisticsAccumulator.of(table, rows, false).toStatistics(), StatisticsAccumulator.of(table, rows, true).toStatistics());
+    }
+
+    private static void assertSameStatistics(Statistics serial, Statistics parallel) {
+        assertEquals("The parallel reviews per property should be the same", serial.getReviewsPerProperty(), parallel.getReviewsPerProperty(), 0);
+        assertEquals("The parallel available properties should be the same", serial.getTotalAvailableProperties(), parallel.getTotalAvailableProperties());
+        assertEquals("The parallel entire homes or apartments should be the same", serial.getEntireHomesOrApartments(), parallel.getEntireHomesOrApartments());
+        assertEquals("The parallel most expensive borough should be the same", serial.getMostExpensiveBorough(), parallel.getMostExpensiveBorough());
+        assertEquals("The parallel properties per borough should be the same", serial.getPropertiesPerBorough(), parallel.getPropertiesPerBorough(), 0);
+        assertEquals("The parallel total reviews per month should be the same", serial.getTotalReviewsPerMonth(), parallel.getTotalReviewsPerMonth(), 0);
+        assertEquals("The parallel most reviewed borough should be the same", serial.getMostReviewedBorough(), parallel.getMostReviewedBorough());
+        assertEquals("The parallel most actively reviewed borough should be the same", serial.getMostActivelyReviewedBorough(), parallel.getMostActivelyReviewedBorough());
+    }
 }
 
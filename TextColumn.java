@@ -0,0 +1,165 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A column of text values, stored as one block of UTF-8 bytes with an offset for each row.
+ * This uses a lot less memory than keeping a {@link String} object for every value, and the
+ * strings are only decoded when a value is actually asked for.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-02
+ */
+public final class TextColumn {
+    // All the values, one after another, encoded as UTF-8.
+    private final byte[] data;
+    // The start of each value in the data. The value of row i ends where the value of row i + 1 starts.
+    private final int[] offsets;
+    private final int size;
+
+    /**
+     * Create a text column from the data and offsets. The arrays are used directly, not copied.
+     *
+     * @param data The UTF-8 bytes of all the values.
+     * @param offsets The start of each value, plus one extra entry for the end of the last value.
+     * @param size The number of values in the column.
+     */
+    TextColumn(byte[] data, int[] offsets, int size) {
+        this.data = data;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Get the number of values in this column.
+     *
+     * @return The number of values in this column.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the value in a row, decoding it into a String.
+     *
+     * @param row The row to get the value of.
+     * @return The value in the row.
+     */
+    public String get(int row) {
+        int start = offsets[row];
+        return new String(data, start, offsets[row + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of bytes used by the value in a row.
+     *
+     * @param row The row to get the length of.
+     * @return The length of the value in bytes.
+     */
+    public int byteLength(int row) {
+        return offsets[row + 1] - offsets[row];
+    }
+
+    // The raw arrays, used when writing the column to a file. Do not modify these!
+    byte[] data() { return data; }
+    int[] offsets() { return offsets; }
+    int dataLength() { return offsets[size]; }
+
+    /**
+     * Builds a {@link TextColumn} one value at a time.
+     */
+    public static final class Builder {
+        private byte[] data;
+        private int[] offsets;
+        private int size = 0;
+
+        /**
+         * Create a builder with room for roughly the number of rows given.
+         *
+         * @param expectedRows The expected number of rows. Used for the starting capacity only.
+         */
+        public Builder(int expectedRows) {
+            data = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(16L, expectedRows * 16L))];
+            offsets = new int[Math.max(2, expectedRows + 1)];
+        }
+
+        /**
+         * Add a value to the end of the column.
+         *
+         * @param value The value to add. null is stored as an empty string.
+         */
+        public void add(String value) {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            add(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Add a value to the end of the column, which is already encoded as UTF-8.
+         *
+         * @param source The array holding the value.
+         * @param offset Where the value starts in the array.
+         * @param length The number of bytes in the value.
+         */
+        public void add(byte[] source, int offset, int length) {
+            int start = offsets[size];
+            ensureDataCapacity(start + length);
+            System.arraycopy(source, offset, data, start, length);
+            finishValue(start + length);
+        }
+
+        /**
+         * Add every value from another column to the end of this one.
+         *
+         * @param other The column to copy the values from.
+         */
+        public void addAll(TextColumn other) {
+            int start = offsets[size];
+            int length = other.offsets[other.size] - other.offsets[0];
+            ensureDataCapacity(start + length);
+            System.arraycopy(other.data, other.offsets[0], data, start, length);
+            ensureOffsetCapacity(size + other.size + 1);
+            int shift = start - other.offsets[0];
+            for (int row = 1; row <= other.size; row++) offsets[size + row] = other.offsets[row] + shift;
+            size += other.size;
+        }
+
+        /**
+         * Get the number of values added so far.
+         *
+         * @return The number of values added so far.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Create the column. The builder should not be used after this.
+         *
+         * @return The finished column.
+         */
+        public TextColumn build() {
+            // Trim off the spare room left from growing, so the column only keeps what it uses...
+            int used = offsets[size];
+            if (data.length != used) data = Arrays.copyOf(data, used);
+            if (offsets.length != size + 1) offsets = Arrays.copyOf(offsets, size + 1);
+            return new TextColumn(data, offsets, size);
+        }
+
+        private void finishValue(int end) {
+            ensureOffsetCapacity(size + 2);
+            offsets[++size] = end;
+        }
+
+        private void ensureDataCapacity(int needed) {
+            if (needed < 0) throw new IllegalStateException("Text column is too large");
+            if (needed > data.length) {
+                // Grow by half again, but don't go over the maximum array size...
+                long newLength = Math.max(needed, data.length + (data.length >> 1));
+                data = Arrays.copyOf(data, (int) Math.min(newLength, Integer.MAX_VALUE - 8));
+            }
+        }
+
+        private void ensureOffsetCapacity(int needed) {
+            if (needed > offsets.length) offsets = Arrays.copyOf(offsets, Math.max(needed, offsets.length + (offsets.length >> 1)));
+        }
+    }
+}
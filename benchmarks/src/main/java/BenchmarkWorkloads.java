@@ -0,0 +1,132 @@
+import airbnb.benchmarks.Workloads;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The implementation of {@link Workloads}, which calls into the application classes.
+ * It has to be in the default package so it can use them.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-25
+ */
+public class BenchmarkWorkloads implements Workloads {
+    // The borough used by the borough filters. It has the most listings in the made up data.
+    private static final String BOROUGH = "Westminster";
+
+    // The made up listings, and the filtered listings for the statistics benchmark.
+    private ListingsTable table;
+    private String preparedFilter;
+    private Collection<AirbnbListing> preparedListings;
+    private List<AirbnbListing> boroughListings;
+    private int[] boroughRows;
+
+    @Override
+    public Object loadWithCsvReader(Path csvFile) {
+        return new AirbnbDataLoader().loadWithCsvReader(csvFile);
+    }
+
+    @Override
+    public Object loadTable(Path csvFile) {
+        // The parser is used directly, so the loader's progress messages don't end up in the results.
+        try {
+            return new ListingsCsvParser().parse(csvFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void prepareSnapshot(Path csvFile) {
+        // Loading the table writes a snapshot if there isn't an up to date one.
+        new AirbnbDataLoader().loadTable(csvFile);
+    }
+
+    @Override
+    public Object loadSnapshot(Path csvFile) {
+        ListingsTable table = ListingsSnapshot.read(csvFile);
+        if (table == null) throw new IllegalStateException("There is no snapshot of " + csvFile);
+        return table;
+    }
+
+    @Override
+    public void writeSyntheticCsv(Path csvFile, int rows) {
+        try {
+            if (!Files.exists(csvFile)) SyntheticListings.writeCsv(csvFile, rows, SyntheticListings.DEFAULT_SEED);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void useSyntheticListings(int rows) {
+        table = SyntheticListings.table(rows, SyntheticListings.DEFAULT_SEED);
+        table.buildIndexes();
+        preparedFilter = null;
+        // The listings window holds AirbnbListing objects, so these are made up front like they are there.
+        boroughRows = createFilter("borough").getRows();
+        boroughListings = new ArrayList<>(table.view(boroughRows));
+    }
+
+    @Override
+    public Object filterListings(String filter) {
+        return createFilter(filter).getListings();
+    }
+
+    @Override
+    public Object statistics(String filter) {
+        if (!filter.equals(preparedFilter)) {
+            preparedListings = createFilter(filter).getListings();
+            preparedFilter = filter;
+        }
+        return new Statistics(preparedListings);
+    }
+
+    @Override
+    public Object filterStatistics(String filter) {
+        return createFilter(filter).getStatistics();
+    }
+
+    @Override
+    public Object countPerBorough(String filter) {
+        return createFilter(filter).getCountPerBorough();
+    }
+
+    @Override
+    public Object sortListings(String sortBy, boolean reverse) {
+        return ListingsSorter.sortListings(boroughListings, sortBy, reverse);
+    }
+
+    @Override
+    public Object sortRows(String sortBy, boolean reverse) {
+        return ListingsSorter.sortRows(table, boroughRows, sortBy, reverse);
+    }
+
+    private ListingsFilter createFilter(String filter) {
+        // A new filter each time has its own cache, so the results are worked out again rather than found in the cache.
+        ListingsFilter listingsFilter = new ListingsFilter(table);
+        switch (filter) {
+            case "all":
+                return listingsFilter;
+            case "price":
+                return listingsFilter.withPrice(100, 200);
+            case "narrowPrice":
+                return listingsFilter.withPrice(480, 520);
+            case "borough":
+                return listingsFilter.withBorough(BOROUGH);
+            case "boroughAndPrice":
+                return listingsFilter.withBorough(BOROUGH).withPrice(100, 200);
+            case "query":
+                // A price range and some of the other conditions, which go through the query planner...
+                return listingsFilter.withPrice(100, 200).withQuery(ListingsQuery.and(
+                        ListingsQuery.withRoomTypes("Entire home/apt"), ListingsQuery.available(), ListingsQuery.reviewsAtLeast(10)));
+            default:
+                throw new IllegalArgumentException("Unknown filter " + filter);
+        }
+    }
+}
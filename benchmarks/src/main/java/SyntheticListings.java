@@ -0,0 +1,285 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Makes up listings in the same format as airbnb-london.csv, so the program can be tested and benchmarked
+ * with data sets much bigger than the London one (and without sharing any real data).
+ *
+ * The listings look roughly like the real ones: each borough has its own location, its own share of the
+ * listings and its own prices, prices are skewed (most are cheap, a few are really expensive), listings
+ * without reviews have empty review fields, some other fields are left empty to exercise the -1 values
+ * the loader uses for missing numbers, and some names have commas and quotes in them.
+ *
+ * Every listing is made from its own random numbers, seeded from the seed and its position. So the same
+ * seed always gives the same listings, and they can be written one at a time to a {@link Sink}, which
+ * means any number of them can be made without running out of memory.
+ *
+ * It can also be run from the command line: SyntheticListings rows file [seed]
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-17
+ */
+public final class SyntheticListings {
+    // The seed used by the benchmarks.
+    public static final long DEFAULT_SEED = 2020;
+
+    // The London boroughs, with roughly how many of the listings are in each (per thousand), where they are,
+    // and how expensive they are compared to the average.
+    static final String[] BOROUGHS = {
+            "Westminster", "Tower Hamlets", "Hackney", "Camden", "Kensington and Chelsea", "Southwark",
+            "Lambeth", "Islington", "Wandsworth", "Hammersmith and Fulham", "Brent", "Lewisham", "Haringey",
+            "Newham", "Ealing", "Barnet", "Greenwich", "Waltham Forest", "Richmond upon Thames", "Merton",
+            "Hounslow", "Croydon", "Redbridge", "City of London", "Enfield", "Hillingdon",
+            "Harrow", "Kingston upon Thames", "Bromley", "Barking and Dagenham", "Sutton", "Bexley", "Havering"};
+    static final int[] BOROUGH_WEIGHTS = {
+            110, 90, 70, 65, 60, 60, 58, 55, 50, 45, 30, 28, 28, 25, 22, 20, 20, 17, 15, 13,
+            12, 12, 8, 8, 7, 7, 6, 6, 6, 4, 4, 3, 3};
+    private static final double[] BOROUGH_LATITUDES = {
+            51.497, 51.515, 51.545, 51.529, 51.502, 51.503, 51.457, 51.538, 51.457, 51.492, 51.558, 51.445, 51.590,
+            51.525, 51.513, 51.625, 51.482, 51.590, 51.461, 51.410, 51.468, 51.372, 51.559, 51.515, 51.652, 51.533,
+            51.580, 51.412, 51.406, 51.540, 51.361, 51.441, 51.577};
+    private static final double[] BOROUGH_LONGITUDES = {
+            -0.137, -0.035, -0.055, -0.125, -0.194, -0.080, -0.123, -0.102, -0.192, -0.223, -0.282, -0.020, -0.111,
+            0.035, -0.308, -0.152, 0.005, -0.018, -0.303, -0.188, -0.361, -0.099, 0.074, -0.093, -0.081, -0.453,
+            -0.334, -0.300, 0.014, 0.129, -0.194, 0.150, 0.212};
+    private static final double[] BOROUGH_PRICES = {
+            1.6, 1.0, 1.0, 1.3, 1.7, 1.1, 1.0, 1.15, 1.05, 1.2, 0.85, 0.8, 0.85, 0.8, 0.85, 0.85, 0.9, 0.8, 1.1, 0.9,
+            0.85, 0.75, 0.75, 1.5, 0.75, 0.8, 0.8, 0.9, 0.8, 0.7, 0.75, 0.7, 0.7};
+    static final String[] ROOM_TYPES = {"Entire home/apt", "Private room", "Shared room"};
+    private static final double[] ROOM_TYPE_PRICES = {1.0, 0.45, 0.3};
+    private static final String[] HOST_NAMES = {"Alex", "Sam", "Maria", "John", "Emma", "Mohammed", "Olivia", "David", "Sophie", "Daniel", "Anna", "James", "Zoë", "José"};
+    private static final String[] ADJECTIVES = {"Cosy", "Bright", "Modern", "Spacious", "Lovely", "Quiet", "Stylish", "Charming"};
+    private static final String[] PLACES = {"double room", "flat", "studio", "house", "loft", "apartment", "bedroom", "maisonette"};
+    private static final String HEADER = "id,name,host_id,host_name,neighbourhood,latitude,longitude,room_type,price,minimum_nights,"
+            + "number_of_reviews,last_review,reviews_per_month,calculated_host_listings_count,availability_365";
+
+    private final long seed;
+    private final int totalWeight;
+
+    // The values of the last listing made by next(). Missing numbers are -1, like the loader gives.
+    String id, name, hostId, hostName, neighbourhood, roomType, lastReview;
+    double latitude, longitude, reviewsPerMonth;
+    int price, minimumNights, numberOfReviews, hostListingsCount, availability365;
+
+    /**
+     * Somewhere the made up listings can be written to, such as a csv file or a table.
+     */
+    public interface Sink {
+        /**
+         * Take the listing which is in the fields of the generator.
+         *
+         * @param listing The generator, holding the values of the listing.
+         * @throws IOException If the listing can't be written.
+         */
+        void accept(SyntheticListings listing) throws IOException;
+    }
+
+    /**
+     * Create a generator.
+     *
+     * @param seed The seed for the random numbers.
+     */
+    public SyntheticListings(long seed) {
+        this.seed = seed;
+        int total = 0;
+        for (int weight : BOROUGH_WEIGHTS) total += weight;
+        totalWeight = total;
+    }
+
+    /**
+     * Write made up listings to a csv file: SyntheticListings rows file [seed]
+     *
+     * @param args The number of rows, the file to write, and optionally the seed.
+     * @throws IOException If the file can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticListings rows file [seed]");
+            System.exit(1);
+        }
+        long rows = Long.parseLong(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        writeCsv(Paths.get(args[1]), rows, seed);
+    }
+
+    /**
+     * Make up a table of listings. It has the same listings as the csv file written by
+     * {@link #writeCsv} with the same seed, after loading it.
+     *
+     * @param rows The number of listings.
+     * @param seed The seed for the random numbers.
+     * @return A table of made up listings.
+     */
+    public static ListingsTable table(int rows, long seed) {
+        ListingsTable.Builder builder = new ListingsTable.Builder(rows);
+        try {
+            new SyntheticListings(seed).generate(rows, listing -> builder.add(listing.id, listing.name, listing.hostId,
+                    listing.hostName, listing.neighbourhood, listing.latitude, listing.longitude, listing.roomType,
+                    listing.price, listing.minimumNights, listing.numberOfReviews, listing.lastReview,
+                    listing.reviewsPerMonth, listing.hostListingsCount, listing.availability365));
+        } catch (IOException e) {
+            // The table builder doesn't throw these...
+            throw new IllegalStateException(e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write made up listings to a csv file, in the same format as airbnb-london.csv.
+     *
+     * @param file The file to write.
+     * @param rows The number of listings.
+     * @param seed The seed for the random numbers.
+     * @throws IOException If the file can't be written.
+     */
+    public static void writeCsv(Path file, long rows, long seed) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            StringBuilder line = new StringBuilder(256);
+            new SyntheticListings(seed).generate(rows, listing -> listing.writeCsvLine(writer, line));
+        }
+    }
+
+    /**
+     * Make up some listings, handing each one to the sink as soon as it is made.
+     *
+     * @param rows The number of listings.
+     * @param sink Where to put the listings.
+     * @throws IOException If the sink can't take a listing.
+     */
+    public void generate(long rows, Sink sink) throws IOException {
+        for (long row = 0; row < rows; row++) {
+            next(row);
+            sink.accept(this);
+        }
+    }
+
+    /**
+     * Make up the listing at a position, and put its values in the fields.
+     *
+     * @param row The position of the listing, which (with the seed) decides what it is.
+     */
+    void next(long row) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + row);
+        int borough = pickBorough(random);
+        int type = random.nextInt(100);
+        // Central boroughs have more entire homes...
+        int room = type < 40 + 15 * BOROUGH_PRICES[borough] ? 0 : type < 98 ? 1 : 2;
+
+        id = Long.toString(13913 + row * 7);
+        hostId = Long.toString(54730 + random.nextLong(row + 1) * 3);
+        hostName = random.nextInt(500) == 0 ? "" : HOST_NAMES[random.nextInt(HOST_NAMES.length)];
+        name = makeName(random, room);
+        neighbourhood = BOROUGHS[borough];
+        latitude = round(BOROUGH_LATITUDES[borough] + gaussian(random) * 0.015, 5);
+        longitude = round(BOROUGH_LONGITUDES[borough] + gaussian(random) * 0.025, 5);
+        roomType = ROOM_TYPES[room];
+        // Prices are log-normal, so most are cheap but a few are really expensive...
+        price = (int) Math.round(Math.exp(4.5 + gaussian(random) * 0.7) * BOROUGH_PRICES[borough] * ROOM_TYPE_PRICES[room]);
+        if (random.nextInt(200) == 0) price = random.nextInt(3) == 0 ? -1 : 1000 + random.nextInt(9000);
+        minimumNights = random.nextInt(10) == 0 ? 1 + random.nextInt(90) : 1 + random.nextInt(4);
+        numberOfReviews = random.nextInt(4) == 0 ? 0 : (int) Math.min(800, Math.exp(random.nextDouble() * 6));
+        if (numberOfReviews == 0) {
+            // Listings with no reviews have empty review fields in the real data...
+            lastReview = "";
+            reviewsPerMonth = -1;
+        } else {
+            lastReview = String.valueOf(2012 + random.nextInt(8)) + '-' + twoDigits(1 + random.nextInt(12)) + '-' + twoDigits(1 + random.nextInt(28));
+            reviewsPerMonth = round(0.01 + random.nextDouble() * Math.min(10, numberOfReviews / 3.0), 2);
+        }
+        hostListingsCount = random.nextInt(10) == 0 ? 2 + random.nextInt(80) : 1;
+        availability365 = random.nextInt(3) == 0 ? 0 : random.nextInt(366);
+        // And a few have other numbers missing...
+        if (random.nextInt(1000) == 0) minimumNights = -1;
+        if (random.nextInt(1000) == 0) availability365 = -1;
+        if (random.nextInt(2000) == 0) latitude = -1;
+    }
+
+    /**
+     * Write the current listing as a line of csv.
+     */
+    private void writeCsvLine(Writer writer, StringBuilder line) throws IOException {
+        line.setLength(0);
+        line.append(id).append(',');
+        appendQuoted(line, name).append(',');
+        line.append(hostId).append(',');
+        appendQuoted(line, hostName).append(',');
+        line.append(neighbourhood).append(',');
+        appendNumber(line, latitude).append(',');
+        line.append(longitude).append(',');
+        line.append(roomType).append(',');
+        appendNumber(line, price).append(',');
+        appendNumber(line, minimumNights).append(',');
+        line.append(numberOfReviews).append(',');
+        line.append(lastReview).append(',');
+        appendNumber(line, reviewsPerMonth).append(',');
+        line.append(hostListingsCount).append(',');
+        appendNumber(line, availability365).append('\n');
+        writer.append(line);
+    }
+
+    private String makeName(SplittableRandom random, int room) {
+        String adjective = ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+        String place = room == 0 ? PLACES[1 + random.nextInt(PLACES.length - 1)] : PLACES[0];
+        switch (random.nextInt(8)) {
+            case 0:
+                // Some names have commas in them...
+                return adjective + ", " + ADJECTIVES[random.nextInt(ADJECTIVES.length)].toLowerCase() + " " + place;
+            case 1:
+                // And some have quotes...
+                return "The \"" + adjective + "\" " + place + " near the Tube";
+            default:
+                return adjective + " " + place + " in " + BOROUGHS[random.nextInt(BOROUGHS.length)];
+        }
+    }
+
+    private int pickBorough(SplittableRandom random) {
+        int value = random.nextInt(totalWeight);
+        for (int borough = 0; borough < BOROUGH_WEIGHTS.length; borough++) {
+            value -= BOROUGH_WEIGHTS[borough];
+            if (value < 0) return borough;
+        }
+        return 0;
+    }
+
+    // SplittableRandom doesn't have nextGaussian() until Java 17, so this uses the Box-Muller transform instead.
+    private static double gaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static StringBuilder appendQuoted(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return line.append(value);
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    // Missing numbers (-1) are left empty, the loader turns them back into -1.
+    private static StringBuilder appendNumber(StringBuilder line, int value) {
+        return value == -1 ? line : line.append(value);
+    }
+
+    private static StringBuilder appendNumber(StringBuilder line, double value) {
+        return value == -1 ? line : line.append(value);
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+
+    private static double round(double value, int places) {
+        double scale = Math.pow(10, places);
+        return Math.round(value * scale) / scale;
+    }
+}
@@ -0,0 +1,56 @@
+package airbnb.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures filtering the listings, calculating their statistics and counting them per borough,
+ * on made up data sets of different sizes, for several combinations of filters.
+ *
+ * The biggest size needs a lot of memory, so pick the sizes with -p rows=... on smaller machines.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-25
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ListingsBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"all", "price", "narrowPrice", "borough", "boroughAndPrice", "query"})
+    public String filter;
+
+    private Workloads workloads;
+
+    @Setup
+    public void setup() {
+        workloads = Workloads.create();
+        workloads.useSyntheticListings(rows);
+    }
+
+    @Benchmark
+    public Object filterListings() {
+        return workloads.filterListings(filter);
+    }
+
+    @Benchmark
+    public Object statistics() {
+        return workloads.statistics(filter);
+    }
+
+    @Benchmark
+    public Object filterStatistics() {
+        return workloads.filterStatistics(filter);
+    }
+
+    @Benchmark
+    public Object countPerBorough() {
+        return workloads.countPerBorough(filter);
+    }
+}
@@ -0,0 +1,66 @@
+package airbnb.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the listings csv file with opencsv's CSVReader (the old loader) against the
+ * memory mapped, parallel ListingsCsvParser, and against reading the binary snapshot of the file.
+ *
+ * By default a csv file of made up listings is written to the temporary folder for each size in rows.
+ * A real file can be used instead with -p csvFile=... (the rows are then ignored).
+ *
+ * The old loader keeps about 470 bytes for every row, so the biggest size is a million rows, which fits in the heap.
+ * Bigger sizes can be picked with -p rows=..., but need a bigger heap too (-jvmArgsAppend -Xmx...).
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-28
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoaderBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param("")
+    public String csvFile;
+
+    private Workloads workloads;
+    private Path path;
+
+    @Setup
+    public void setup() {
+        workloads = Workloads.create();
+        if (csvFile.isEmpty()) {
+            path = Paths.get(System.getProperty("java.io.tmpdir"), "airbnb-synthetic-" + rows + ".csv");
+            workloads.writeSyntheticCsv(path, rows);
+        } else {
+            path = Paths.get(csvFile);
+        }
+        if (!Files.isReadable(path)) throw new IllegalStateException("Can't read the csv file " + path.toAbsolutePath());
+        workloads.prepareSnapshot(path);
+    }
+
+    @Benchmark
+    public Object csvReader() {
+        return workloads.loadWithCsvReader(path);
+    }
+
+    @Benchmark
+    public Object parallelParser() {
+        return workloads.loadTable(path);
+    }
+
+    @Benchmark
+    public Object snapshot() {
+        return workloads.loadSnapshot(path);
+    }
+}
@@ -0,0 +1,47 @@
+package airbnb.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sorting the listings of one borough (the biggest one) on made up data sets of different sizes,
+ * both as listing objects (how the listings window used to) and as row ordinals (how it does now).
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SortBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"Host Name", "Price per Night", "Number of Reviews", "Minimum Number of Nights"})
+    public String sortBy;
+
+    @Param({"false", "true"})
+    public boolean reverse;
+
+    private Workloads workloads;
+
+    @Setup
+    public void setup() {
+        workloads = Workloads.create();
+        workloads.useSyntheticListings(rows);
+    }
+
+    @Benchmark
+    public Object sortListings() {
+        return workloads.sortListings(sortBy, reverse);
+    }
+
+    @Benchmark
+    public Object sortRows() {
+        return workloads.sortRows(sortBy, reverse);
+    }
+}
@@ -0,0 +1,91 @@
+package airbnb.benchmarks;
+
+import java.nio.file.Path;
+
+/**
+ * The operations of the application that are benchmarked.
+ *
+ * The application classes are in the default package, which can't be imported from a named package,
+ * and JMH can't generate benchmarks for classes in the default package. So the benchmarks reach the
+ * application through this interface, which is implemented by BenchmarkWorkloads in the default package.
+ * Each method returns its result so the benchmark can hand it to JMH and it isn't optimised away.
+ *
+ * @author Skye Macdonald (k19015078)
+ * @version 2020-04-25
+ */
+public interface Workloads {
+    /**
+     * Get the implementation of the workloads from the default package.
+     *
+     * @return The workloads.
+     */
+    static Workloads create() {
+        try {
+            return (Workloads) Class.forName("BenchmarkWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Couldn't create the benchmark workloads", e);
+        }
+    }
+
+    /**
+     * Load a csv file one line at a time with opencsv, which is how the data set used to be loaded.
+     */
+    Object loadWithCsvReader(Path csvFile);
+
+    /**
+     * Load a csv file into a table with the parallel parser.
+     */
+    Object loadTable(Path csvFile);
+
+    /**
+     * Write a binary snapshot of a csv file, if there isn't an up to date one already.
+     */
+    void prepareSnapshot(Path csvFile);
+
+    /**
+     * Load a table from the binary snapshot of a csv file.
+     */
+    Object loadSnapshot(Path csvFile);
+
+    /**
+     * Write a csv file of made up listings, unless it already exists.
+     */
+    void writeSyntheticCsv(Path csvFile, int rows);
+
+    /**
+     * Make up a table of listings, which the rest of the methods below work on.
+     */
+    void useSyntheticListings(int rows);
+
+    /**
+     * Filter the listings with a new filter (so nothing is cached), and get the filtered listings.
+     * The filter is one of: all, price, narrowPrice, borough, boroughAndPrice, query.
+     */
+    Object filterListings(String filter);
+
+    /**
+     * Calculate the statistics of the filtered listings with the Statistics constructor.
+     * The listings are filtered before this is called, so only the statistics are measured.
+     */
+    Object statistics(String filter);
+
+    /**
+     * Get the statistics of the filtered listings from a new filter, which uses the price cube when it can.
+     */
+    Object filterStatistics(String filter);
+
+    /**
+     * Count the filtered listings in each borough with a new filter.
+     */
+    Object countPerBorough(String filter);
+
+    /**
+     * Sort the listings of the biggest borough, like the listings window does.
+     */
+    Object sortListings(String sortBy, boolean reverse);
+
+    /**
+     * Sort the rows of the biggest borough without making any listings, like the listings window does now.
+     */
+    Object sortRows(String sortBy, boolean reverse);
+}